@@ -12,27 +12,56 @@ import io.nats.connector.plugin.NATSEvent;
 
 import java.io.FileInputStream;
 import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
 
+import javax.jms.BytesMessage;
 import javax.jms.Destination;
 import javax.jms.ExceptionListener;
+import javax.jms.InvalidDestinationException;
 import javax.jms.JMSException;
+import javax.jms.JMSSecurityException;
 import javax.jms.MessageConsumer;
+import javax.jms.MessageFormatException;
+import javax.jms.MessageProducer;
 import javax.jms.Session;
 import javax.jms.TextMessage;
 
 import org.apache.activemq.ActiveMQConnection;
 
 import org.apache.activemq.ActiveMQConnectionFactory;
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.apache.activemq.command.ActiveMQTopic;
 import org.apache.activemq.transport.TransportListener;
 import org.apache.commons.text.StringSubstitutor;
 import org.slf4j.Logger;
 
 /**
- * A ActiveMQ consumer only plugin.
+ * A ActiveMQ consumer plugin, with optional publishing of an allow-list
+ * of NATS subjects to ActiveMQ.
  * 
  * Properties are defined in system with following:
  * 
@@ -46,6 +75,35 @@ import org.slf4j.Logger;
  * 
  *  io.nats.connector.plugins.activemq.topic
  * 
+ *  io.nats.connector.plugins.activemq.chunk.size
+ * 
+ *  io.nats.connector.plugins.activemq.envelope
+ * 
+ *  io.nats.connector.plugins.activemq.executor
+ * 
+ *  io.nats.connector.plugins.activemq.reload
+ * 
+ *  io.nats.connector.plugins.activemq.publish.subjects
+ * 
+ *  io.nats.connector.plugins.activemq.publish.topic.pre
+ * 
+ *  io.nats.connector.plugins.activemq.publish.topic.post
+ * 
+ *  io.nats.connector.plugins.activemq.publish.sessions
+ * 
+ *  io.nats.connector.plugins.activemq.publish.batch.size
+ * 
+ *  io.nats.connector.plugins.activemq.monitor.interval
+ * 
+ *  io.nats.connector.plugins.activemq.monitor.subject
+ * 
+ *  io.nats.connector.plugins.activemq.warmup
+ * 
+ *  io.nats.connector.plugins.activemq.warmup.messages
+ * 
+ * The timeout, topic, subject pre/post, publish subjects and pre/post and
+ * monitor subject properties are applied again without restarting when
+ * the configuration file changes and reload is enabled.
  */
 public class ActiveMQPlugin implements NATSConnectorPlugin
 {
@@ -80,7 +138,8 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     static public final String PROPERTY_ACTIVEMQ_TIMEOUT = "io.nats.connector.plugins.activemq.timeout";
 
     /**
-     * Default activemq topic
+     * Default activemq topic, a comma separated list subscribes to
+     * each topic with its own worker
      */
     static public final String DEFAULT_ACTIVEMQ_TOPIC = ">";
     static public final String PROPERTY_ACTIVEMQ_TOPIC = "io.nats.connector.plugins.activemq.topic";
@@ -93,11 +152,160 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     static public final String DEFAULT_NATS_TOPIC_POST = "";
     static public final String PROPERTY_NATS_TOPIC_POST = "io.nats.connector.plugins.activemq.nats.topic.post";
 
+    /**
+     * Default maximum NATS payload size before bodies are split in chunks (0 disables)
+     */
+    static public final int DEFAULT_CHUNK_SIZE = 0;
+    static public final String PROPERTY_CHUNK_SIZE = "io.nats.connector.plugins.activemq.chunk.size";
+
+    /**
+     * Default wrapping of bodies in an envelope with the JMS headers and properties
+     */
+    static public final boolean DEFAULT_ENVELOPE = false;
+    static public final String PROPERTY_ENVELOPE = "io.nats.connector.plugins.activemq.envelope";
+
+    /**
+     * Default execution mode of the workers, platform or virtual threads
+     */
+    static public final String EXECUTOR_PLATFORM = "platform";
+    static public final String EXECUTOR_VIRTUAL = "virtual";
+    static public final String DEFAULT_EXECUTOR = EXECUTOR_PLATFORM;
+    static public final String PROPERTY_EXECUTOR = "io.nats.connector.plugins.activemq.executor";
+
+    /**
+     * Default reload of the configuration file when it changes
+     */
+    static public final boolean DEFAULT_RELOAD = false;
+    static public final String PROPERTY_RELOAD = "io.nats.connector.plugins.activemq.reload";
+
+    /**
+     * Time given to editors to finish writing the configuration file before reloading it
+     */
+    static final long RELOAD_DELAY = 200;
+
+    /**
+     * Default NATS subjects published to ActiveMQ, comma separated (empty disables)
+     */
+    static public final String DEFAULT_PUBLISH_SUBJECTS = "";
+    static public final String PROPERTY_PUBLISH_SUBJECTS = "io.nats.connector.plugins.activemq.publish.subjects";
+
+    /**
+     * Default pre/post ActiveMQ topic conversion identifier for published subjects
+     */
+    static public final String DEFAULT_PUBLISH_TOPIC_PRE = "";
+    static public final String PROPERTY_PUBLISH_TOPIC_PRE = "io.nats.connector.plugins.activemq.publish.topic.pre";
+    static public final String DEFAULT_PUBLISH_TOPIC_POST = "";
+    static public final String PROPERTY_PUBLISH_TOPIC_POST = "io.nats.connector.plugins.activemq.publish.topic.post";
+
+    /**
+     * Default number of pooled ActiveMQ sessions publishing NATS messages
+     */
+    static public final int DEFAULT_PUBLISH_SESSIONS = 2;
+    static public final String PROPERTY_PUBLISH_SESSIONS = "io.nats.connector.plugins.activemq.publish.sessions";
+
+    /**
+     * Default maximum number of messages sent in one ActiveMQ transaction
+     */
+    static public final int DEFAULT_PUBLISH_BATCH_SIZE = 100;
+    static public final String PROPERTY_PUBLISH_BATCH_SIZE = "io.nats.connector.plugins.activemq.publish.batch.size";
+
+    /**
+     * Number of batches the publish queue holds before NATS messages are
+     * dropped
+     */
+    static final int PUBLISH_QUEUE_BATCHES = 10;
+
+    /**
+     * Number of dropped NATS messages between warnings
+     */
+    static final long PUBLISH_DROP_LOG_INTERVAL = 1000;
+
+    /**
+     * Bounds in milliseconds of the backoff between attempts to publish a
+     * failed batch again
+     */
+    static final long PUBLISH_RETRY_MIN = 100;
+    static final long PUBLISH_RETRY_MAX = 30000;
+
+    /**
+     * Number of attempts to publish a failed batch before it is split, and
+     * before a single message that keeps failing is dropped
+     */
+    static final int PUBLISH_RETRY_ATTEMPTS = 5;
+
+    /**
+     * Maximum number of ActiveMQ topics cached for publishing, the least
+     * recently used are created again when needed
+     */
+    static final int PUBLISH_DESTINATION_CACHE = 1000;
+
+    /**
+     * ActiveMQ property tagging messages published from NATS with their
+     * subject.  Tagged messages are never forwarded back to NATS.
+     */
+    static public final String ORIGIN_PROPERTY = "NATSConnectorOrigin";
+
+    /**
+     * Default interval in milliseconds between broker statistics samples (0 disables)
+     */
+    static public final long DEFAULT_MONITOR_INTERVAL = 0;
+    static public final String PROPERTY_MONITOR_INTERVAL = "io.nats.connector.plugins.activemq.monitor.interval";
+
+    /**
+     * Default NATS subject of the monitor reports (empty only logs them)
+     */
+    static public final String DEFAULT_MONITOR_SUBJECT = "";
+    static public final String PROPERTY_MONITOR_SUBJECT = "io.nats.connector.plugins.activemq.monitor.subject";
+
+    /**
+     * Default warm-up of the conversion path during startup, off since it
+     * competes for CPU with the startup it is meant to speed up
+     */
+    static public final boolean DEFAULT_WARMUP = false;
+    static public final String PROPERTY_WARMUP = "io.nats.connector.plugins.activemq.warmup";
+
+    /**
+     * Default number of synthetic text and bytes message pairs run through
+     * the conversion path on warm-up, in the order of the invocation count
+     * at which the JIT fully optimizes a method
+     */
+    static public final int DEFAULT_WARMUP_MESSAGES = 10000;
+    static public final String PROPERTY_WARMUP_MESSAGES = "io.nats.connector.plugins.activemq.warmup.messages";
+
+    /**
+     * Number of warm-up messages larger than the chunk size when chunking
+     */
+    static final int WARMUP_CHUNKED_MESSAGES = 10;
+
 
     NATSConnector connector = null;
     Logger logger = null;
 
-    ActiveMQListener listener = null;
+    Map<String, ActiveMQListener> listeners = new LinkedHashMap<String, ActiveMQListener>();
+    ExecutorService executor = null;
+    volatile javax.jms.Connection connection = null;
+    private volatile javax.jms.Connection pendingConnection = null;
+    private volatile boolean closed = false;
+    private final Object connectionLock = new Object();
+    MessageChunker chunker = null;
+    EnvelopeEncoder envelopeEncoder = null;
+    ConfigurationWatcher watcher = null;
+
+    List<ActiveMQPublisher> publishers = new ArrayList<ActiveMQPublisher>();
+    volatile BlockingQueue<Message> publishQueue = null;
+    Set<String> subscriptions = new LinkedHashSet<String>();
+    Map<String, Destination> destinations = Collections.synchronizedMap(
+        new LinkedHashMap<String, Destination>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Destination> eldest)
+            {
+                return size() > PUBLISH_DESTINATION_CACHE;
+            }
+        });
+
+    ConnectorStatistics statistics = new ConnectorStatistics();
+    BrokerMonitor monitor = null;
+    ScheduledExecutorService scheduler = null;
 
     /**
      * Configuration parameters of the plugin
@@ -105,10 +313,17 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     String uri = DEFAULT_ACTIVEMQ_URI;
     String username = DEFAULT_ACTIVEMQ_USERNAME;
     String password = DEFAULT_ACTIVEMQ_PASSWORD;
-    int timeout = DEFAULT_ACTIVEMQ_TIMEOUT;
-    String topic = DEFAULT_ACTIVEMQ_TOPIC;
-    String natsTopicPre = DEFAULT_NATS_TOPIC_PRE;
-    String natsTopicPost = DEFAULT_NATS_TOPIC_POST;
+    volatile ReloadableProperties reloadable = new ReloadableProperties(new Properties());
+    int chunkSize = DEFAULT_CHUNK_SIZE;
+    boolean envelope = DEFAULT_ENVELOPE;
+    String executorMode = DEFAULT_EXECUTOR;
+    boolean reload = DEFAULT_RELOAD;
+    String configFile = null;
+    int publishSessions = DEFAULT_PUBLISH_SESSIONS;
+    int publishBatchSize = DEFAULT_PUBLISH_BATCH_SIZE;
+    long monitorInterval = DEFAULT_MONITOR_INTERVAL;
+    boolean warmup = DEFAULT_WARMUP;
+    int warmupMessages = DEFAULT_WARMUP_MESSAGES;
 
     /**
      * Update environment variables in properties files.
@@ -129,16 +344,18 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     }
 
     /**
-     * Get the configuration URL from the properties (if set)
+     * Read the system properties and the configuration file.
+     * 
+     * @return properties, null if no configuration file is set
      */
-    private void loadProperties() throws Exception
+    private Properties readProperties() throws Exception
     {
         Properties p = (Properties) System.getProperties().clone();
 
-        String configFile = p.getProperty(PROPERTY_FILE);
+        configFile = p.getProperty(PROPERTY_FILE);
 
         if (configFile == null)
-            return;
+            return null;
 
         logger.debug("Loading properties from '" + configFile + '"');
         FileInputStream in = new FileInputStream(configFile);
@@ -154,6 +371,18 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
         }
 
         updateEnvironmentProperties(p);
+        return p;
+    }
+
+    /**
+     * Get the configuration URL from the properties (if set)
+     */
+    private void loadProperties() throws Exception
+    {
+        Properties p = readProperties();
+
+        if (p == null)
+            return;
 
         uri = p.getProperty(
             PROPERTY_ACTIVEMQ_URI, DEFAULT_ACTIVEMQ_URI);
@@ -161,53 +390,191 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
             PROPERTY_ACTIVEMQ_USERNAME, DEFAULT_ACTIVEMQ_USERNAME);
         password = p.getProperty(
             PROPERTY_ACTIVEMQ_PASSWORD, DEFAULT_ACTIVEMQ_PASSWORD);
-        timeout = Integer.parseInt(p.getProperty(
-            PROPERTY_ACTIVEMQ_TIMEOUT, String.valueOf(DEFAULT_ACTIVEMQ_TIMEOUT)));
-        topic = p.getProperty(
-            PROPERTY_ACTIVEMQ_TOPIC, DEFAULT_ACTIVEMQ_TOPIC);
-        natsTopicPre = p.getProperty(
-            PROPERTY_NATS_TOPIC_PRE, DEFAULT_NATS_TOPIC_PRE);
-        natsTopicPost = p.getProperty(
-            PROPERTY_NATS_TOPIC_POST, DEFAULT_NATS_TOPIC_POST);
+        chunkSize = Integer.parseInt(p.getProperty(
+            PROPERTY_CHUNK_SIZE, String.valueOf(DEFAULT_CHUNK_SIZE)));
+        envelope = Boolean.parseBoolean(p.getProperty(
+            PROPERTY_ENVELOPE, String.valueOf(DEFAULT_ENVELOPE)));
+        executorMode = p.getProperty(
+            PROPERTY_EXECUTOR, DEFAULT_EXECUTOR);
+        if (!EXECUTOR_PLATFORM.equals(executorMode) && !EXECUTOR_VIRTUAL.equals(executorMode))
+            throw new IllegalArgumentException("Unknown executor '" + executorMode + "'");
+        reload = Boolean.parseBoolean(p.getProperty(
+            PROPERTY_RELOAD, String.valueOf(DEFAULT_RELOAD)));
+        publishSessions = Integer.parseInt(p.getProperty(
+            PROPERTY_PUBLISH_SESSIONS, String.valueOf(DEFAULT_PUBLISH_SESSIONS)));
+        publishBatchSize = Integer.parseInt(p.getProperty(
+            PROPERTY_PUBLISH_BATCH_SIZE, String.valueOf(DEFAULT_PUBLISH_BATCH_SIZE)));
+        if (publishSessions < 1 || publishBatchSize < 1)
+            throw new IllegalArgumentException("Publish sessions and batch size must be positive");
+        monitorInterval = Long.parseLong(p.getProperty(
+            PROPERTY_MONITOR_INTERVAL, String.valueOf(DEFAULT_MONITOR_INTERVAL)));
+        warmup = Boolean.parseBoolean(p.getProperty(
+            PROPERTY_WARMUP, String.valueOf(DEFAULT_WARMUP)));
+        warmupMessages = Integer.parseInt(p.getProperty(
+            PROPERTY_WARMUP_MESSAGES, String.valueOf(DEFAULT_WARMUP_MESSAGES)));
+        if (warmupMessages < 0)
+            throw new IllegalArgumentException("Warm-up messages can not be negative");
+
+        reloadable = new ReloadableProperties(p);
+
+        traceProperties();
+    }
+
+    /**
+     * Check if properties that are only applied on startup have changed.
+     */
+    private boolean requiresRestart(Properties p)
+    {
+        return !uri.equals(p.getProperty(PROPERTY_ACTIVEMQ_URI, DEFAULT_ACTIVEMQ_URI))
+            || !username.equals(p.getProperty(PROPERTY_ACTIVEMQ_USERNAME, DEFAULT_ACTIVEMQ_USERNAME))
+            || !password.equals(p.getProperty(PROPERTY_ACTIVEMQ_PASSWORD, DEFAULT_ACTIVEMQ_PASSWORD))
+            || !String.valueOf(chunkSize).equals(p.getProperty(PROPERTY_CHUNK_SIZE, String.valueOf(DEFAULT_CHUNK_SIZE)))
+            || envelope != Boolean.parseBoolean(p.getProperty(PROPERTY_ENVELOPE, String.valueOf(DEFAULT_ENVELOPE)))
+            || !executorMode.equals(p.getProperty(PROPERTY_EXECUTOR, DEFAULT_EXECUTOR))
+            || !String.valueOf(publishSessions).equals(p.getProperty(PROPERTY_PUBLISH_SESSIONS, String.valueOf(DEFAULT_PUBLISH_SESSIONS)))
+            || !String.valueOf(publishBatchSize).equals(p.getProperty(PROPERTY_PUBLISH_BATCH_SIZE, String.valueOf(DEFAULT_PUBLISH_BATCH_SIZE)))
+            || !String.valueOf(monitorInterval).equals(p.getProperty(PROPERTY_MONITOR_INTERVAL, String.valueOf(DEFAULT_MONITOR_INTERVAL)));
+    }
+
+    /**
+     * Reload the configuration file.  Only the subscriptions that changed
+     * are recreated, the ActiveMQ and NATS connections are kept.
+     */
+    void reloadProperties()
+    {
+        try {
+            Properties p = readProperties();
+            if (p == null)
+                return;
+            if (requiresRestart(p))
+                logger.warn("Connection, chunk, envelope, executor, publish pool and monitor interval changes require a restart");
+            reloadable = new ReloadableProperties(p);
+        }
+        catch (Exception e) {
+            logger.error("Unable to reload properties, keeping current configuration: {}", e);
+            return;
+        }
 
         traceProperties();
+        updateListeners();
+        updateSubscriptions();
     }
 
 
     private void traceProperties() {
+        ReloadableProperties current = reloadable;
         logger.trace("ActiveMQ plugin properties:");
         logger.trace("  uri: " + uri);
         logger.trace("  username: " + username);
         logger.trace("  password: " + password);
-        logger.trace("  timeout: " + timeout);
-        logger.trace("  topic: " + topic);
-        logger.trace("  natsTopicPre: " + natsTopicPre);
-        logger.trace("  natsTopicPost: " + natsTopicPost);
+        logger.trace("  timeout: " + current.timeout);
+        logger.trace("  topic: " + current.topic);
+        logger.trace("  natsTopicPre: " + current.mapping.pre);
+        logger.trace("  natsTopicPost: " + current.mapping.post);
+        logger.trace("  chunkSize: " + chunkSize);
+        logger.trace("  envelope: " + envelope);
+        logger.trace("  executor: " + executorMode);
+        logger.trace("  reload: " + reload);
+        logger.trace("  publishSubjects: " + current.publishSubjects);
+        logger.trace("  publishTopicPre: " + current.publishMapping.pre);
+        logger.trace("  publishTopicPost: " + current.publishMapping.post);
+        logger.trace("  publishSessions: " + publishSessions);
+        logger.trace("  publishBatchSize: " + publishBatchSize);
+        logger.trace("  monitorInterval: " + monitorInterval);
+        logger.trace("  monitorSubject: " + current.monitorSubject);
+        logger.trace("  warmup: " + warmup);
+        logger.trace("  warmupMessages: " + warmupMessages);
     }
 
     /**
-     * ActiveMQ listener
+     * Split a comma separated property value, ignoring empty entries.
+     * 
+     * @param value - property value
+     * @return entries in the order they were defined
      */
-    private class ActiveMQListener implements Runnable, ExceptionListener, TransportListener
+    static Set<String> splitList(String value)
     {
-        private MessageConsumer consumer;
+        Set<String> entries = new LinkedHashSet<String>();
+        for (String entry : value.split(",")) {
+            entry = entry.trim();
+            if (entry.length() != 0)
+                entries.add(entry);
+        }
+        return entries;
+    }
 
-        /**
-         * Send a message NATS.  Note the following assumes that the connector to the
-         * NATS server has been established.
-         * 
-         * @param topic - NATS topic to send to
-         * @param message - message to send
-         */
-        private void sendNatsMessage(String topic, String message)
+
+    /**
+     * Entries to add and remove to go from the current set to the
+     * configured one, in the order they were defined.
+     */
+    static class Changes
+    {
+        final Set<String> added = new LinkedHashSet<String>();
+        final Set<String> removed = new LinkedHashSet<String>();
+
+        Changes(Set<String> current, Set<String> configured)
         {
-            byte[] payload = message.getBytes();
-            Message natsMessage = new Message();
-            natsMessage.setData(payload, 0, payload.length);
-            natsMessage.setSubject(topic);
-            connector.publish(natsMessage);
+            for (String entry : current) {
+                if (!configured.contains(entry))
+                    removed.add(entry);
+            }
+            for (String entry : configured) {
+                if (!current.contains(entry))
+                    added.add(entry);
+            }
         }
+    }
+
+
+    /**
+     * Properties applied again when the configuration file changes.
+     * Immutable, it is replaced as a whole so readers never see a mix of
+     * the old and new values.
+     */
+    static class ReloadableProperties
+    {
+        final int timeout;
+        final String topic;
+        final SubjectMapping mapping;
+        final String publishSubjects;
+        final SubjectMapping publishMapping;
+        final String monitorSubject;
+
+        ReloadableProperties(Properties p)
+        {
+            timeout = Integer.parseInt(p.getProperty(
+                PROPERTY_ACTIVEMQ_TIMEOUT, String.valueOf(DEFAULT_ACTIVEMQ_TIMEOUT)));
+            topic = p.getProperty(
+                PROPERTY_ACTIVEMQ_TOPIC, DEFAULT_ACTIVEMQ_TOPIC);
+            mapping = new SubjectMapping(
+                p.getProperty(PROPERTY_NATS_TOPIC_PRE, DEFAULT_NATS_TOPIC_PRE),
+                p.getProperty(PROPERTY_NATS_TOPIC_POST, DEFAULT_NATS_TOPIC_POST));
+            publishSubjects = p.getProperty(
+                PROPERTY_PUBLISH_SUBJECTS, DEFAULT_PUBLISH_SUBJECTS);
+            publishMapping = new SubjectMapping(
+                p.getProperty(PROPERTY_PUBLISH_TOPIC_PRE, DEFAULT_PUBLISH_TOPIC_PRE),
+                p.getProperty(PROPERTY_PUBLISH_TOPIC_POST, DEFAULT_PUBLISH_TOPIC_POST));
+            monitorSubject = p.getProperty(
+                PROPERTY_MONITOR_SUBJECT, DEFAULT_MONITOR_SUBJECT);
+        }
+    }
+
+
+    /**
+     * ActiveMQ topic to NATS subject mapping, or NATS subject to ActiveMQ
+     * topic when publishing.  Immutable, part of the reloadable properties.
+     */
+    static class SubjectMapping
+    {
+        final String pre;
+        final String post;
 
+        SubjectMapping(String pre, String post)
+        {
+            this.pre = pre;
+            this.post = post;
+        }
 
         /**
          * Parse topic by removing xxx:// prepended in front of ActiveMQ
@@ -216,139 +583,913 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
          * @param topic
          * @return parse topic
          */
-        private String topicToNatsTopic(String topic)
+        String toNatsTopic(String topic)
         {
-            String natsTopic = topic.split("//", 2)[1];
-            if(natsTopicPre.length() != 0)
-                natsTopic = natsTopicPre + "." + natsTopic;
-            if(natsTopicPost.length() != 0)
-                natsTopic += "." + natsTopicPost;
-            return natsTopic;
+            return wrap(topic.split("//", 2)[1]);
+        }
+
+        /**
+         * Build the ActiveMQ topic of a published NATS subject.
+         * 
+         * @param subject
+         * @return ActiveMQ topic name
+         */
+        String toTopic(String subject)
+        {
+            return wrap(subject);
         }
 
+        private String wrap(String name)
+        {
+            if(pre.length() != 0)
+                name = pre + "." + name;
+            if(post.length() != 0)
+                name += "." + post;
+            return name;
+        }
+    }
+
+
+    /**
+     * Watch the configuration file and reload it when it changes
+     */
+    private class ConfigurationWatcher implements Runnable
+    {
+        private final Path file;
+        private final WatchService watchService;
+
+        ConfigurationWatcher(String configFile) throws IOException
+        {
+            file = Paths.get(configFile).toAbsolutePath();
+            watchService = file.getFileSystem().newWatchService();
+            file.getParent().register(watchService,
+                StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+        }
 
         /**
-         * Thread process.  Loops until thread is interrupted. Important
-         * to note that messages that aren't TextMessage are ignored.
+         * Thread process.  Waits for changes of the directory holding the
+         * configuration file until the watcher is shutdown.
          */
         public void run()
         {
+            logger.info("Watching '{}' for changes", file);
             try {
-                this.connect();
                 while (!Thread.currentThread().isInterrupted()) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (event.kind() == StandardWatchEventKinds.OVERFLOW
+                            || file.getFileName().equals(event.context()))
+                            changed = true;
+                    }
+                    key.reset();
+
+                    if (changed) {
+                        // Let the file settle and drop the events it caused
+                        Thread.sleep(RELOAD_DELAY);
+                        while ((key = watchService.poll()) != null) {
+                            key.pollEvents();
+                            key.reset();
+                        }
+                        logger.info("Configuration '{}' changed, reloading", file);
+                        reloadProperties();
+                    }
+                }
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            catch (ClosedWatchServiceException e) {
+                // shutdown
+            }
+            logger.info("Configuration watcher finished");
+        }
+
+        /**
+         * Stop watching
+         */
+        public void shutdown()
+        {
+            try {
+                watchService.close();
+            }
+            catch (IOException e) {
+                logger.debug("Unable to close watch service: {}", e);
+            }
+        }
+    }
+
+
+    /**
+     * ActiveMQ connection events, shared by all listeners
+     */
+    private class ConnectionListener implements ExceptionListener, TransportListener
+    {
+        @Override
+        public synchronized void onException(JMSException err) {
+            logger.error("JMS Exception: {}", err);
+        }
+        
+        @Override
+        public synchronized void onException(IOException err) {
+            logger.warn("IOException received: {}", err);
+        }
+    
+        @Override
+        public synchronized void transportInterupted() {
+            logger.info("Transport interrupted");
+        }
+    
+        @Override
+        public synchronized void transportResumed() {
+            logger.info("Transport resumed");
+        }
+
+        @Override
+        public void onCommand(Object command) {}
+    }
+
+
+    /**
+     * ActiveMQ listener, one per subscribed topic.  Each listener owns its
+     * session on the shared connection.  When publishing to ActiveMQ is
+     * enabled, the listener only receives messages that were not
+     * published from NATS.
+     */
+    private class ActiveMQListener implements Runnable, MessageChunker.Publisher
+    {
+        private final String topic;
+        private final boolean filtered;
+        private volatile Session session;
+        private MessageConsumer consumer;
+        private volatile boolean running = true;
+
+        ActiveMQListener(String topic, boolean filtered)
+        {
+            this.topic = topic;
+            this.filtered = filtered;
+        }
+
+        /**
+         * Send a message NATS.  Note the following assumes that the connector to the
+         * NATS server has been established.
+         * 
+         * @param topic - NATS topic to send to
+         * @param payload - message to send
+         */
+        @Override
+        public void publish(String topic, byte[] payload)
+        {
+            Message natsMessage = new Message();
+            natsMessage.setData(payload, 0, payload.length);
+            natsMessage.setSubject(topic);
+            connector.publish(natsMessage);
+        }
+
+
+        /**
+         * Thread process.  Loops until the listener is shutdown or the
+         * thread is interrupted. Important to note that messages that
+         * aren't TextMessage or BytesMessage are ignored.
+         */
+        public void run()
+        {
+            try {
+                MessageConsumer subscription = this.subscribe();
+                while (running && !Thread.currentThread().isInterrupted()) {
                     // Wait for a message until timeout is reached
-				    javax.jms.Message message = this.consumer.receive(timeout);
+                    int timeout = reloadable.timeout;
+				    javax.jms.Message message = subscription.receive(timeout);
                     if (message == null) {
                         logger.debug("ActiveMQ receive timeout ({}) reached", timeout);
+                        continue;
+                    }
+
+                    String amqTopic = message.getJMSDestination().toString();
+                    String natsTopic = forward(amqTopic, message, this, envelopeEncoder);
+                    if (natsTopic == null) {
+                        logger.debug("Received (ignored):\n{}", message);
                     } else if (message instanceof TextMessage) {
-                        TextMessage textMessage = (TextMessage) message;
-                        String amqTopic = textMessage.getJMSDestination().toString();
-                        String natsTopic = topicToNatsTopic(amqTopic);
-                        String content = textMessage.getText();
                         logger.debug(
                             "Send ActiveMQ ({}) -> NATS ({}):\n{}",
-                            amqTopic, natsTopic, content);
-                        sendNatsMessage(natsTopic, content);
+                            amqTopic, natsTopic, ((TextMessage) message).getText());
                     } else {
-                        logger.debug("Received (ignored):\n{}", message);
+                        logger.debug(
+                            "Send ActiveMQ ({}) -> NATS ({}): {} bytes",
+                            amqTopic, natsTopic, ((BytesMessage) message).getBodyLength());
                     }
+
+                    if (natsTopic != null && statistics.forwarded(amqTopic, message.getJMSTimestamp()))
+                        logger.info("First message forwarded {} ms after startup",
+                            statistics.getTimeToFirstForward());
                 }
             } catch (JMSException e) {
-                logger.error("Problem with ActiveMQ broker: {}", e);
-			    Thread.currentThread().interrupt();
+                if (running)
+                    logger.error("Problem with ActiveMQ broker: {}", e);
+            }
+            close();
+
+            // Let the next reload create a new listener for the topic
+            synchronized (listeners) {
+                if (listeners.get(topic) == this)
+                    listeners.remove(topic);
             }
-            logger.info("ActiveMQ listener thread finished");
+            logger.info("ActiveMQ listener thread for '{}' finished", topic);
         }
 
 
         /**
-         * Initiate connection to ActiveMQ broker.  The connection is establised and the
-         * object is self referenced.
+         * Create the listener session and subscribe to its topic.  The
+         * connection is obtained before taking the listener lock since it
+         * blocks until a broker is reachable.
          * 
+         * @return consumer of the topic
          * @throws JMSException 
          */
-        private void connect() throws JMSException
-        {		
-            logger.info("Setting ActiveMQ connection to {}", uri);
-            ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(uri);
-            
-            javax.jms.Connection connection;
-            if( username != "" && password != "") {
-                logger.info("Connecting with username '{}' (password hidden)", username);
-                connection = connectionFactory.createConnection(username, password);
-            } else {
-                logger.info("Connecting with no credentials");
-                connection = connectionFactory.createConnection();
+        private MessageConsumer subscribe() throws JMSException
+        {
+            javax.jms.Connection connection = getConnection();
+            synchronized (this) {
+                subscribe(connection);
+                return consumer;
             }
-            ((ActiveMQConnection) connection).addTransportListener(this);
-            connection.setExceptionListener(this);
+        }
+
+        private void subscribe(javax.jms.Connection connection) throws JMSException
+        {
+            if (!running)
+                throw new javax.jms.IllegalStateException("Listener for '" + topic + "' is shutdown");
 
-            logger.debug("Start connection");
-		    connection.start();
+            // Already subscribed during startup
+            if (consumer != null)
+                return;
 
             // Create a Session
-            Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+            if (session == null)
+                session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
             
             // Connect to topic
             logger.info("Subscribing to topic '{}'", topic);
             Destination destination = session.createTopic(topic);
             
-            this.consumer = session.createConsumer(destination);
+            // Messages published from NATS are never sent back, the selector
+            // is only evaluated by the broker when publishing is enabled
+            if (filtered)
+                this.consumer = session.createConsumer(destination, ORIGIN_PROPERTY + " IS NULL");
+            else
+                this.consumer = session.createConsumer(destination);
         }
 
-        @Override
-        public synchronized void onException(JMSException err) {
-            logger.error("JMS Exception: {}", err);
-            Thread.currentThread().interrupt();
+        /**
+         * Close the session once the loop has finished.  Only called from
+         * the loop thread, other threads stop the listener with
+         * {@link #shutdown()}, which leaves the consumer in place.
+         */
+        private synchronized void close()
+        {
+            if (session == null)
+                return;
+            try {
+                session.close();
+            }
+            catch (JMSException e) {
+                logger.debug("Unable to close session of '{}': {}", topic, e);
+            }
+            session = null;
+            consumer = null;
         }
-        
-        @Override
-        public synchronized void onException(IOException err) {
-            logger.warn("IOException received: {}", err);
+
+        /**
+         * Stop the listener loop.  The session is closed without taking the
+         * listener lock, which a subscribe blocked on the broker may hold,
+         * and closing it also unblocks a pending receive.
+         */
+        public void shutdown()
+        {
+            logger.info("ActiveMQ listener for '{}' shutdown", topic);
+            running = false;
+            Session current = session;
+            if (current == null)
+                return;
+            try {
+                current.close();
+            }
+            catch (JMSException e) {
+                logger.debug("Unable to close session of '{}': {}", topic, e);
+            }
         }
-    
-        @Override
-        public synchronized void transportInterupted() {
-            logger.info("Transport interrupted");
+    }
+
+
+    /**
+     * Envelope header sent in front of the body, if enabled.
+     * 
+     * @param encoder - envelope encoder, null if disabled
+     * @param topic - ActiveMQ topic of the message
+     * @param message - ActiveMQ message
+     * @return envelope header or an empty prefix
+     * @throws JMSException
+     */
+    private static byte[] envelopeHeader(EnvelopeEncoder encoder, String topic, javax.jms.Message message)
+        throws JMSException
+    {
+        if (encoder == null)
+            return MessageChunker.NO_PREFIX;
+        return encoder.encode(topic, message);
+    }
+
+
+    /**
+     * Convert an ActiveMQ message and hand its NATS payloads to the
+     * publisher.  Important to note that messages that aren't TextMessage
+     * or BytesMessage are ignored.
+     * 
+     * @param amqTopic - ActiveMQ topic of the message
+     * @param message - ActiveMQ message
+     * @param publisher - receiver of the NATS payloads
+     * @param encoder - envelope encoder, null if disabled
+     * @return NATS subject, null if the message was ignored
+     * @throws JMSException
+     */
+    private String forward(String amqTopic, javax.jms.Message message,
+        MessageChunker.Publisher publisher, EnvelopeEncoder encoder) throws JMSException
+    {
+        if (message instanceof TextMessage) {
+            String natsTopic = reloadable.mapping.toNatsTopic(amqTopic);
+            chunker.publish(publisher, natsTopic, envelopeHeader(encoder, amqTopic, message),
+                ((TextMessage) message).getText());
+            return natsTopic;
+        } else if (message instanceof BytesMessage) {
+            String natsTopic = reloadable.mapping.toNatsTopic(amqTopic);
+            chunker.publish(publisher, natsTopic, envelopeHeader(encoder, amqTopic, message),
+                (BytesMessage) message);
+            return natsTopic;
         }
-    
+        return null;
+    }
+
+
+    /**
+     * Publisher dropping the payloads of warm-up messages
+     */
+    private static class DiscardPublisher implements MessageChunker.Publisher
+    {
         @Override
-        public synchronized void transportResumed() {
-            logger.info("Transport resumed");
+        public void publish(String subject, byte[] payload) {}
+    }
+
+
+    /**
+     * Run synthetic messages through the conversion path before the first
+     * real message arrives.  The classes of the path are loaded and
+     * initialized on the first messages, and with enough messages the JIT
+     * compiles its hot methods.  A separate envelope encoder is used so
+     * its caches, filled per destination, stay clean of the configured
+     * topics, which can be wildcards real messages never carry.
+     */
+    class WarmUpTask implements Runnable
+    {
+        private final MessageChunker.Publisher discard = new DiscardPublisher();
+        final EnvelopeEncoder encoder = envelope ? new EnvelopeEncoder() : null;
+
+        public void run()
+        {
+            long start = System.nanoTime();
+            List<ActiveMQTopic> topics = new ArrayList<ActiveMQTopic>();
+            for (String t : splitList(reloadable.topic))
+                topics.add(new ActiveMQTopic(t));
+            if (topics.isEmpty())
+                return;
+
+            try {
+                byte[] body = new byte[512];
+                Arrays.fill(body, (byte) 'x');
+                for (int i = 0; i < warmupMessages; i++)
+                    warmUp(topics.get(i % topics.size()), body);
+
+                if (chunkSize > 0) {
+                    body = new byte[2 * chunkSize + 1];
+                    Arrays.fill(body, (byte) 'x');
+                    for (int i = 0; i < WARMUP_CHUNKED_MESSAGES; i++)
+                        warmUp(topics.get(i % topics.size()), body);
+                }
+            }
+            catch (JMSException e) {
+                logger.warn("Unable to warm up conversion: {}", e);
+                return;
+            }
+            logger.info("Conversion warmed up with {} messages in {} ms",
+                2 * warmupMessages, (System.nanoTime() - start) / 1000000);
         }
 
-        @Override
-        public void onCommand(Object command) {}
+        /**
+         * Forward a text and a bytes message with the given body
+         */
+        private void warmUp(ActiveMQTopic destination, byte[] body) throws JMSException
+        {
+            ActiveMQTextMessage textMessage = new ActiveMQTextMessage();
+            textMessage.setJMSDestination(destination);
+            textMessage.setJMSTimestamp(System.currentTimeMillis());
+            textMessage.setText(new String(body));
+            forward(destination.toString(), textMessage, discard, encoder);
+
+            ActiveMQBytesMessage bytesMessage = new ActiveMQBytesMessage();
+            bytesMessage.setJMSDestination(destination);
+            bytesMessage.setJMSTimestamp(System.currentTimeMillis());
+            bytesMessage.writeBytes(body);
+            bytesMessage.reset();
+            forward(destination.toString(), bytesMessage, discard, encoder);
+        }
+    }
+
+
+    /**
+     * Connect to ActiveMQ and subscribe the listeners while the NATS
+     * connection is being initialized.  Subscribed consumers buffer the
+     * messages received until the listeners start.
+     */
+    private class StartupTask implements Runnable
+    {
+        public void run()
+        {
+            List<ActiveMQListener> current;
+            synchronized (listeners) {
+                current = new ArrayList<ActiveMQListener>(listeners.values());
+            }
+
+            try {
+                getConnection();
+                for (ActiveMQListener listener : current)
+                    listener.subscribe();
+            }
+            catch (JMSException e) {
+                logger.warn("Unable to subscribe during startup, listeners will retry: {}", e);
+                return;
+            }
+            logger.info("ActiveMQ subscribed {} ms after startup", statistics.getUptime());
+        }
+    }
+
+
+    /**
+     * ActiveMQ publisher of NATS messages.  Each publisher of the pool owns
+     * a transacted session and an anonymous producer, and sends the queued
+     * messages in batches committed together.
+     */
+    private class ActiveMQPublisher implements Runnable
+    {
+        private final BlockingQueue<Message> queue;
+        private Session session;
+        private MessageProducer producer;
+        private volatile boolean running = true;
+
+        ActiveMQPublisher(BlockingQueue<Message> queue)
+        {
+            this.queue = queue;
+        }
+
+        /**
+         * Thread process.  Loops until the publisher is shutdown or the
+         * thread is interrupted.  A batch that fails is sent again with an
+         * increasing backoff on a new session.  After a few attempts, or
+         * right away when the error will not go away on its own, the batch
+         * is split in halves to isolate the failing message, which is then
+         * dropped, so broker errors never end the loop nor stall it.
+         */
+        public void run()
+        {
+            List<Message> batch = new ArrayList<Message>(publishBatchSize);
+            int size = 0;
+            int attempts = 0;
+            long backoff = PUBLISH_RETRY_MIN;
+            while (running && !Thread.currentThread().isInterrupted()) {
+                try {
+                    if (batch.isEmpty()) {
+                        Message first = queue.poll(reloadable.timeout, TimeUnit.MILLISECONDS);
+                        if (first == null)
+                            continue;
+                        batch.add(first);
+                        queue.drainTo(batch, publishBatchSize - 1);
+                        size = batch.size();
+                    }
+                    if (session == null)
+                        open();
+                    List<Message> sent = batch.subList(0, Math.min(size, batch.size()));
+                    send(sent);
+                    sent.clear();
+                    attempts = 0;
+                    backoff = PUBLISH_RETRY_MIN;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (JMSException e) {
+                    if (!running)
+                        break;
+                    // Closing the session rolls back the failed transaction
+                    close();
+                    size = Math.min(size, batch.size());
+                    if (isPermanent(e) || ++attempts >= PUBLISH_RETRY_ATTEMPTS) {
+                        attempts = 0;
+                        if (size > 1) {
+                            logger.error("Unable to publish {} messages to ActiveMQ, splitting the batch: {}",
+                                size, e);
+                            size = (size + 1) / 2;
+                        } else {
+                            Message failed = batch.remove(0);
+                            long dropped = statistics.dropped();
+                            logger.error("Dropping NATS message ({}) not published to ActiveMQ, {} dropped so far: {}",
+                                failed.getSubject(), dropped, e);
+                        }
+                        continue;
+                    }
+                    logger.error("Unable to publish {} messages to ActiveMQ, retrying in {} ms: {}",
+                        size, backoff, e);
+                    try {
+                        Thread.sleep(backoff);
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    }
+                    backoff = Math.min(2 * backoff, PUBLISH_RETRY_MAX);
+                }
+            }
+            if (!batch.isEmpty())
+                logger.warn("Dropping {} NATS messages not yet published to ActiveMQ", batch.size());
+            close();
+            logger.info("ActiveMQ publisher thread finished");
+        }
+
+        /**
+         * Send a batch of NATS messages in one transaction.
+         */
+        private void send(List<Message> batch) throws JMSException
+        {
+            SubjectMapping currentMapping = reloadable.publishMapping;
+            for (Message natsMessage : batch) {
+                BytesMessage message = session.createBytesMessage();
+                message.writeBytes(natsMessage.getData());
+                message.setStringProperty(ORIGIN_PROPERTY, natsMessage.getSubject());
+                producer.send(destination(currentMapping.toTopic(natsMessage.getSubject())), message);
+            }
+            session.commit();
+            statistics.published(batch.size());
+            logger.debug("Send NATS -> ActiveMQ: {} messages", batch.size());
+        }
+
+        /**
+         * Check if an error is caused by the messages themselves and would
+         * fail again on any attempt
+         */
+        private boolean isPermanent(JMSException e)
+        {
+            return e instanceof JMSSecurityException
+                || e instanceof InvalidDestinationException
+                || e instanceof MessageFormatException;
+        }
+
+        /**
+         * Cached ActiveMQ topic
+         */
+        private Destination destination(String name) throws JMSException
+        {
+            Destination destination = destinations.get(name);
+            if (destination == null) {
+                destination = session.createTopic(name);
+                destinations.put(name, destination);
+            }
+            return destination;
+        }
+
+        /**
+         * Create the publisher session and producer.
+         * 
+         * @throws JMSException 
+         */
+        private void open() throws JMSException
+        {
+            javax.jms.Connection connection = getConnection();
+            synchronized (this) {
+                if (!running)
+                    throw new javax.jms.IllegalStateException("Publisher is shutdown");
+                session = connection.createSession(true, Session.SESSION_TRANSACTED);
+                producer = session.createProducer(null);
+            }
+        }
+
+        /**
+         * Close the session, rolling back an uncommitted batch
+         */
+        private synchronized void close()
+        {
+            if (session == null)
+                return;
+            try {
+                session.close();
+            }
+            catch (JMSException e) {
+                logger.debug("Unable to close publisher session: {}", e);
+            }
+            session = null;
+            producer = null;
+        }
 
         /**
-         * Shutdown current thread
+         * Stop the publisher loop
          */
         public void shutdown()
         {
-            logger.info("ActiveMQ listener shutdown");
-            Thread.currentThread().interrupt();
+            running = false;
+        }
+    }
+
+
+    /**
+     * Periodic broker statistics sample.  Failures are logged so the
+     * following samples are still scheduled.
+     */
+    private class MonitorTask implements Runnable
+    {
+        public void run()
+        {
+            try {
+                String report = monitor.sample(getConnection(), reloadable.timeout).toString();
+                logger.info("ActiveMQ monitor: {}", report);
+
+                String subject = reloadable.monitorSubject;
+                if (subject.length() != 0) {
+                    byte[] payload = report.getBytes();
+                    Message natsMessage = new Message();
+                    natsMessage.setData(payload, 0, payload.length);
+                    natsMessage.setSubject(subject);
+                    connector.publish(natsMessage);
+                }
+            }
+            catch (Exception e) {
+                logger.warn("Unable to sample ActiveMQ statistics: {}", e);
+            }
+        }
+    }
+
+
+    /**
+     * Subscribe to the allowed NATS subjects that are not subscribed yet
+     * and unsubscribe from the ones no longer allowed.  The publishers are
+     * started with the first subscription.
+     */
+    private void updateSubscriptions()
+    {
+        Set<String> subjects = splitList(reloadable.publishSubjects);
+        synchronized (subscriptions) {
+            if (connector == null)
+                return;
+
+            if (!subjects.isEmpty() && publishers.isEmpty())
+                startPublishers();
+
+            Changes changes = new Changes(subscriptions, subjects);
+            for (String subject : changes.removed) {
+                logger.info("Unsubscribing from NATS subject '{}'", subject);
+                connector.unsubscribe(subject);
+                subscriptions.remove(subject);
+            }
+            for (String subject : changes.added) {
+                try {
+                    logger.info("Subscribing to NATS subject '{}' for publishing to ActiveMQ", subject);
+                    connector.subscribe(subject);
+                    subscriptions.add(subject);
+                }
+                catch (Exception e) {
+                    logger.error("Unable to subscribe to NATS subject '{}': {}", subject, e);
+                }
+            }
+        }
+    }
+
+
+    /**
+     * Start the pool of ActiveMQ publishers
+     */
+    private void startPublishers()
+    {
+        synchronized (listeners) {
+            if (executor == null)
+                return;
+            publishQueue = new LinkedBlockingQueue<Message>(
+                publishSessions * publishBatchSize * PUBLISH_QUEUE_BATCHES);
+            for (int i = 0; i < publishSessions; i++) {
+                ActiveMQPublisher publisher = new ActiveMQPublisher(publishQueue);
+                publishers.add(publisher);
+                executor.execute(publisher);
+            }
         }
     }
 
 
     /**
-     * Initialize activemq thread object but do not run.  We will
-     * let NATS ExecutorService to handle the trhread.
+     * Initiate connection to ActiveMQ broker on first use.  The connection
+     * is shared by all listeners.  Starting a failover connection blocks
+     * until a broker is reachable, so it is published before it is started
+     * and {@link #closeConnection()} can close it without taking the
+     * connection lock.
+     * 
+     * @return started connection
+     * @throws JMSException 
+     */
+    private javax.jms.Connection getConnection() throws JMSException
+    {
+        javax.jms.Connection current = connection;
+        if (current != null)
+            return current;
+
+        synchronized (connectionLock) {
+            if (connection == null)
+                connection = connect();
+            return connection;
+        }
+    }
+
+    private javax.jms.Connection connect() throws JMSException
+    {
+        if (closed)
+            throw new javax.jms.IllegalStateException("ActiveMQ connection is closed");
+
+        logger.info("Setting ActiveMQ connection to {}", uri);
+        ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(uri);
+        
+        javax.jms.Connection connection;
+        if( username != "" && password != "") {
+            logger.info("Connecting with username '{}' (password hidden)", username);
+            connection = connectionFactory.createConnection(username, password);
+        } else {
+            logger.info("Connecting with no credentials");
+            connection = connectionFactory.createConnection();
+        }
+        ConnectionListener connectionListener = new ConnectionListener();
+        ((ActiveMQConnection) connection).addTransportListener(connectionListener);
+        connection.setExceptionListener(connectionListener);
+
+        pendingConnection = connection;
+        if (closed) {
+            connection.close();
+            throw new javax.jms.IllegalStateException("ActiveMQ connection is closed");
+        }
+
+        logger.debug("Start connection");
+        try {
+            connection.start();
+        }
+        catch (JMSException e) {
+            pendingConnection = null;
+            connection.close();
+            throw e;
+        }
+        return connection;
+    }
+
+
+    /**
+     * Close the ActiveMQ connection, also when it is still being started.
+     * Closing the transport releases the threads blocked on the broker.
+     */
+    private void closeConnection()
+    {
+        closed = true;
+        javax.jms.Connection current = pendingConnection;
+        if (current == null)
+            return;
+        try {
+            current.close();
+        }
+        catch (JMSException e) {
+            logger.warn("Unable to close ActiveMQ connection: {}", e);
+        }
+        pendingConnection = null;
+        connection = null;
+    }
+
+
+    /**
+     * Create the executor running the workers.  Virtual threads are
+     * looked up by reflection so the plugin still builds and runs on
+     * JVMs without them.
+     * 
+     * @return executor service
+     */
+    private ExecutorService createExecutor()
+    {
+        if (EXECUTOR_VIRTUAL.equals(executorMode)) {
+            try {
+                Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+                logger.info("Running ActiveMQ workers on virtual threads");
+                return (ExecutorService) factory.invoke(null);
+            }
+            catch (Exception e) {
+                logger.warn("Virtual threads are not available ({}), using platform threads", e.toString());
+            }
+        }
+        return Executors.newCachedThreadPool();
+    }
+
+
+    /**
+     * Initialize activemq thread objects but do not run.  We will
+     * let the ExecutorService created once NATS is ready handle the threads.
      */
     private void initActiveMQ()
     {
-        listener = new ActiveMQListener();
+        if (chunkSize > 0)
+            logger.info("Splitting messages larger than {} bytes", chunkSize);
+        chunker = new MessageChunker(chunkSize);
+        if (envelope) {
+            logger.info("Wrapping messages in envelopes with JMS headers and properties");
+            envelopeEncoder = new EnvelopeEncoder();
+        }
+
+        updateListeners();
     }
 
 
     /**
-     * Shutdown the thread
+     * Create a listener for each configured topic that does not have one,
+     * started if the workers are already running, and stop the listeners
+     * of topics that are no longer configured.  Listeners that stopped on
+     * an error have removed themselves and are created again, as are the
+     * listeners subscribed without the origin selector once publishing is
+     * enabled or the other way around.
+     */
+    void updateListeners()
+    {
+        ReloadableProperties current = reloadable;
+        Set<String> topics = splitList(current.topic);
+        boolean filtered = !splitList(current.publishSubjects).isEmpty();
+        synchronized (listeners) {
+            Iterator<ActiveMQListener> it = listeners.values().iterator();
+            while (it.hasNext()) {
+                ActiveMQListener listener = it.next();
+                if (listener.filtered != filtered) {
+                    listener.shutdown();
+                    it.remove();
+                }
+            }
+
+            Changes changes = new Changes(listeners.keySet(), topics);
+            for (String t : changes.removed)
+                listeners.remove(t).shutdown();
+            if (monitor != null)
+                monitor.setTopics(topics);
+            for (String t : changes.added) {
+                ActiveMQListener listener = new ActiveMQListener(t, filtered);
+                listeners.put(t, listener);
+                if (connector != null && executor != null)
+                    executor.execute(listener);
+            }
+        }
+    }
+
+
+    /**
+     * Shutdown the threads and the ActiveMQ connection
      */
     private void teardownActiveMQ()
     {
-        if (listener != null) {
-            listener.shutdown();
+        if (watcher != null) {
+            watcher.shutdown();
+            watcher = null;
+        }
+
+        if (scheduler != null) {
+            scheduler.shutdownNow();
+            scheduler = null;
+        }
+
+        synchronized (listeners) {
+            for (ActiveMQListener listener : listeners.values())
+                listener.shutdown();
+            listeners.clear();
+
+            for (ActiveMQPublisher publisher : publishers)
+                publisher.shutdown();
+            publishers.clear();
+
+            if (publishQueue != null) {
+                // Also releases NATS deliveries blocked on a full queue
+                if (!publishQueue.isEmpty())
+                    logger.warn("Dropping {} NATS messages not yet published to ActiveMQ", publishQueue.size());
+                BlockingQueue<Message> queue = publishQueue;
+                publishQueue = null;
+                queue.clear();
+            }
+
+            if (executor != null) {
+                executor.shutdownNow();
+                executor = null;
+            }
+        }
+
+        if (monitor != null) {
+            monitor.close();
+            monitor = null;
         }
+
+        closeConnection();
     }
 
     /**
@@ -365,9 +1506,19 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     public boolean onStartup(Logger logger, ConnectionFactory factory) {
         this.logger = logger;
 
+        statistics.started();
+
         try {
             loadProperties();
             initActiveMQ();
+
+            // Get ActiveMQ ready in parallel with the NATS initialization
+            synchronized (listeners) {
+                executor = createExecutor();
+                executor.execute(new StartupTask());
+                if (warmup)
+                    executor.execute(new WarmUpTask());
+            }
         }
         catch (Exception e) {
             logger.error("Unable to initialize: {}", e);
@@ -391,9 +1542,33 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     @Override
     public boolean onNatsInitialized(NATSConnector connector)
     {
-        this.connector = connector;
-        ExecutorService executor = Executors.newSingleThreadExecutor();
-        executor.execute(listener);
+        synchronized (listeners) {
+            this.connector = connector;
+            for (ActiveMQListener listener : listeners.values())
+                executor.execute(listener);
+        }
+        logger.info("NATS initialized {} ms after startup", statistics.getUptime());
+
+        if (monitorInterval > 0) {
+            logger.info("Sampling ActiveMQ statistics every {} ms", monitorInterval);
+            monitor = new BrokerMonitor(logger, statistics);
+            monitor.setTopics(splitList(reloadable.topic));
+            scheduler = Executors.newSingleThreadScheduledExecutor();
+            scheduler.scheduleWithFixedDelay(
+                new MonitorTask(), monitorInterval, monitorInterval, TimeUnit.MILLISECONDS);
+        }
+
+        if (reload && configFile != null) {
+            try {
+                watcher = new ConfigurationWatcher(configFile);
+                executor.execute(watcher);
+            }
+            catch (IOException e) {
+                logger.warn("Unable to watch '{}', configuration will not be reloaded: {}", configFile, e);
+            }
+        }
+
+        updateSubscriptions();
         return true;
     }
 
@@ -415,7 +1590,17 @@ public class ActiveMQPlugin implements NATSConnectorPlugin
     @Override
     public void onNATSMessage(Message msg)
     {
-        logger.debug("Received NATS ({}), plugin not desgined for ActiveMQ publishing", msg.getSubject());
+        BlockingQueue<Message> queue = publishQueue;
+        if (queue == null) {
+            logger.debug("Received NATS ({}), ActiveMQ publishing is not enabled", msg.getSubject());
+            return;
+        }
+        // Never blocks NATS delivery, drops when the publishers fall behind
+        if (queue.offer(msg))
+            return;
+        long dropped = statistics.dropped();
+        if (dropped % PUBLISH_DROP_LOG_INTERVAL == 1)
+            logger.warn("ActiveMQ publish queue full, {} NATS messages dropped so far", dropped);
     }
 
     /**
@@ -0,0 +1,397 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MapMessage;
+import javax.jms.Message;
+import javax.jms.MessageConsumer;
+import javax.jms.MessageListener;
+import javax.jms.MessageProducer;
+import javax.jms.Session;
+import javax.jms.TemporaryQueue;
+
+import org.json.JSONObject;
+import org.slf4j.Logger;
+
+/**
+ * Monitor of the ActiveMQ backlog of the subscribed topics.
+ *
+ * The monitor counts the slow consumer and fast producer advisories of the
+ * subscribed topics and, on each sample, queries the broker statistics plugin for the
+ * subscribed topics and for the subscriptions of the connector.  Topics
+ * keep no messages for non-durable subscriptions, so the backlog is the
+ * number of messages the broker holds for each subscription of the
+ * connector.  The report combines the backlog and rates from the broker
+ * with the connector counters and its estimated lag.
+ *
+ * The statistics plugin must be enabled on the broker
+ * (statisticsBrokerPlugin) and advisories for slow consumers and fast
+ * producers must be enabled in the destination policies.
+ */
+class BrokerMonitor implements MessageListener
+{
+    /**
+     * Destinations of the ActiveMQ statistics plugin and advisories
+     */
+    static final String STATISTICS_PREFIX = "ActiveMQ.Statistics.Destination.";
+    static final String SUBSCRIPTION_STATISTICS = "ActiveMQ.Statistics.Subscription";
+    static final String SLOW_CONSUMER_ADVISORY = "ActiveMQ.Advisory.SlowConsumer.Topic.";
+    static final String FAST_PRODUCER_ADVISORY = "ActiveMQ.Advisory.FastProducer.Topic.";
+
+    /**
+     * Previous counters of a destination, used to compute rates
+     */
+    static class Sample
+    {
+        final long time;
+        final long enqueueCount;
+        final long dequeueCount;
+
+        Sample(long time, long enqueueCount, long dequeueCount)
+        {
+            this.time = time;
+            this.enqueueCount = enqueueCount;
+            this.dequeueCount = dequeueCount;
+        }
+
+        /**
+         * @return messages per second enqueued since the previous sample
+         */
+        double enqueueRate(Sample previous)
+        {
+            return (enqueueCount - previous.enqueueCount) * 1000.0 / (time - previous.time);
+        }
+
+        /**
+         * @return messages per second dequeued since the previous sample
+         */
+        double dequeueRate(Sample previous)
+        {
+            return (dequeueCount - previous.dequeueCount) * 1000.0 / (time - previous.time);
+        }
+    }
+
+    /**
+     * @return seconds to consume the backlog at the given dequeue rate
+     */
+    static double drainSeconds(long size, double dequeueRate)
+    {
+        return size / dequeueRate;
+    }
+
+    private final Logger logger;
+    private final ConnectorStatistics statistics;
+
+    private final AtomicLong slowConsumerAdvisories = new AtomicLong();
+    private final AtomicLong fastProducerAdvisories = new AtomicLong();
+    private final Map<String, Sample> samples = new HashMap<String, Sample>();
+    private final Map<String, Sample> subscriptionSamples = new HashMap<String, Sample>();
+    private long sampleCount = 0;
+    private volatile Set<String> topics = Collections.emptySet();
+
+    private Session advisorySession = null;
+    private Session statisticsSession = null;
+    private MessageProducer statisticsProducer;
+    private TemporaryQueue replyQueue;
+    private MessageConsumer replyConsumer;
+
+    /**
+     * @param logger - plugin logger
+     * @param statistics - connector counters
+     */
+    BrokerMonitor(Logger logger, ConnectorStatistics statistics)
+    {
+        this.logger = logger;
+        this.statistics = statistics;
+    }
+
+    /**
+     * Set the topics to query on the next samples.
+     *
+     * @param topics - subscribed ActiveMQ topics (can be wildcards)
+     */
+    void setTopics(Set<String> topics)
+    {
+        this.topics = Collections.unmodifiableSet(new LinkedHashSet<String>(topics));
+    }
+
+    /**
+     * Create the monitor sessions on first use.  Advisories are received
+     * asynchronously on their own session since a session with a listener
+     * can not be used for synchronous receives.
+     */
+    private void open(Connection connection) throws JMSException
+    {
+        if (statisticsSession != null)
+            return;
+
+        advisorySession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        advisorySession.createConsumer(advisorySession.createTopic(SLOW_CONSUMER_ADVISORY + ">")).setMessageListener(this);
+        advisorySession.createConsumer(advisorySession.createTopic(FAST_PRODUCER_ADVISORY + ">")).setMessageListener(this);
+
+        statisticsSession = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+        statisticsProducer = statisticsSession.createProducer(null);
+        replyQueue = statisticsSession.createTemporaryQueue();
+        replyConsumer = statisticsSession.createConsumer(replyQueue);
+    }
+
+    /**
+     * Advisory received.  The advisory topics cover the whole broker, only
+     * the advisories of the subscribed topics are counted.
+     */
+    @Override
+    public void onMessage(Message message)
+    {
+        try {
+            String advisory = physicalName(message.getJMSDestination().toString());
+            boolean slowConsumer = advisory.startsWith(SLOW_CONSUMER_ADVISORY);
+            String topic = advisory.substring(slowConsumer ?
+                SLOW_CONSUMER_ADVISORY.length() : FAST_PRODUCER_ADVISORY.length());
+            if (!isSubscribed(topics, topic)) {
+                logger.debug("Ignoring advisory of an unsubscribed topic: {}", advisory);
+                return;
+            }
+            if (slowConsumer)
+                slowConsumerAdvisories.incrementAndGet();
+            else
+                fastProducerAdvisories.incrementAndGet();
+            logger.warn("ActiveMQ advisory received: {}", advisory);
+        }
+        catch (JMSException e) {
+            logger.debug("Unable to read advisory: {}", e);
+        }
+    }
+
+    /**
+     * Query the broker statistics of the subscribed topics and build the
+     * report.  Only called from a single thread.  Requests carry a
+     * correlation identifier per sample so late replies to a previous
+     * sample are discarded.
+     *
+     * @param connection - ActiveMQ connection
+     * @param timeout - time to wait for statistics replies in milliseconds
+     * @return report
+     * @throws JMSException
+     */
+    JSONObject sample(Connection connection, long timeout) throws JMSException
+    {
+        open(connection);
+
+        String correlationId = "sample-" + (++sampleCount);
+        String clientId = connection.getClientID();
+        Set<String> current = topics;
+        Set<String> expected = new HashSet<String>();
+        for (String topic : current) {
+            // The plugin queries the destination of the type of the request
+            statisticsProducer.send(statisticsSession.createTopic(STATISTICS_PREFIX + topic),
+                request(correlationId));
+            if (!isWildcard(topic))
+                expected.add(topic);
+        }
+        boolean wildcards = expected.size() < current.size();
+        statisticsProducer.send(statisticsSession.createQueue(SUBSCRIPTION_STATISTICS),
+            request(correlationId));
+        Set<String> unsubscribed = new HashSet<String>(current);
+
+        // Wildcard topics return one reply per matching destination, collect
+        // replies until none arrives within the timeout.  Without wildcards
+        // stop as soon as every topic and subscription has answered.
+        Map<String, MapMessage> replies = new HashMap<String, MapMessage>();
+        Map<String, MapMessage> subscriptions = new HashMap<String, MapMessage>();
+        while (wildcards || !expected.isEmpty() || !unsubscribed.isEmpty()) {
+            Message reply = replyConsumer.receive(timeout);
+            if (reply == null)
+                break;
+            if (!correlationId.equals(reply.getJMSCorrelationID())) {
+                logger.debug("Discarding late statistics reply {}", reply.getJMSCorrelationID());
+                continue;
+            }
+            if (!(reply instanceof MapMessage))
+                continue;
+            MapMessage stats = (MapMessage) reply;
+            String name = physicalName(stats.getString("destinationName"));
+            if (!stats.itemExists("clientId")) {
+                replies.put(name, stats);
+                expected.remove(name);
+            } else if (clientId != null && clientId.equals(stats.getString("clientId"))
+                && current.contains(name)) {
+                // Subscription of one of the listeners of the connector
+                subscriptions.put(name, stats);
+                unsubscribed.remove(name);
+            }
+        }
+
+        long now = System.currentTimeMillis();
+        Map<String, Long> lags = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : statistics.getLags().entrySet())
+            lags.put(physicalName(entry.getKey()), entry.getValue());
+        Map<String, Long> lastForwardTimes = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> entry : statistics.getLastForwardTimes().entrySet())
+            lastForwardTimes.put(physicalName(entry.getKey()), entry.getValue());
+
+        JSONObject destinations = new JSONObject();
+        for (Map.Entry<String, MapMessage> entry : replies.entrySet()) {
+            String name = entry.getKey();
+            MapMessage stats = entry.getValue();
+            long enqueueCount = stats.getLong("enqueueCount");
+            long dequeueCount = stats.getLong("dequeueCount");
+
+            JSONObject destination = new JSONObject();
+            destination.put("size", stats.getLong("size"));
+            destination.put("enqueueCount", enqueueCount);
+            destination.put("dequeueCount", dequeueCount);
+            destination.put("consumerCount", stats.getLong("consumerCount"));
+
+            Sample sample = new Sample(now, enqueueCount, dequeueCount);
+            Sample previous = samples.put(name, sample);
+            if (previous != null && now > previous.time) {
+                destination.put("enqueueRate", sample.enqueueRate(previous));
+                destination.put("dequeueRate", sample.dequeueRate(previous));
+            }
+
+            Long lag = lags.get(name);
+            if (lag != null)
+                destination.put("lagMillis", lag);
+            Long lastForwardTime = lastForwardTimes.get(name);
+            if (lastForwardTime != null)
+                destination.put("sinceLastForwardMillis", now - lastForwardTime);
+
+            destinations.put(name, destination);
+        }
+
+        JSONObject backlogs = new JSONObject();
+        for (Map.Entry<String, MapMessage> entry : subscriptions.entrySet()) {
+            String name = entry.getKey();
+            MapMessage stats = entry.getValue();
+            long pending = stats.getLong("pendingQueueSize");
+            long dispatched = stats.getLong("dispatchedQueueSize");
+            long backlog = pending + dispatched;
+
+            JSONObject subscription = new JSONObject();
+            subscription.put("backlog", backlog);
+            subscription.put("pendingQueueSize", pending);
+            subscription.put("dispatchedQueueSize", dispatched);
+
+            Sample sample = new Sample(now, stats.getLong("enqueueCounter"), stats.getLong("dequeueCounter"));
+            Sample previous = subscriptionSamples.put(name, sample);
+            if (previous != null && now > previous.time) {
+                double dequeueRate = sample.dequeueRate(previous);
+                subscription.put("enqueueRate", sample.enqueueRate(previous));
+                subscription.put("dequeueRate", dequeueRate);
+                if (dequeueRate > 0)
+                    subscription.put("drainSeconds", drainSeconds(backlog, dequeueRate));
+            }
+
+            backlogs.put(name, subscription);
+        }
+
+        JSONObject connector = new JSONObject();
+        connector.put("forwarded", statistics.getForwarded());
+        connector.put("published", statistics.getPublished());
+        connector.put("dropped", statistics.getDropped());
+        connector.put("timeToFirstForwardMillis", statistics.getTimeToFirstForward());
+        long lastForwardTime = statistics.getLastForwardTime();
+        connector.put("sinceLastForwardMillis", lastForwardTime == 0 ? -1 : now - lastForwardTime);
+        connector.put("slowConsumerAdvisories", slowConsumerAdvisories.get());
+        connector.put("fastProducerAdvisories", fastProducerAdvisories.get());
+
+        JSONObject report = new JSONObject();
+        report.put("timestamp", now);
+        report.put("connector", connector);
+        report.put("subscriptions", backlogs);
+        report.put("destinations", destinations);
+        return report;
+    }
+
+    /**
+     * Statistics request replied to the reply queue of the monitor
+     */
+    private Message request(String correlationId) throws JMSException
+    {
+        Message request = statisticsSession.createMessage();
+        request.setJMSReplyTo(replyQueue);
+        request.setJMSCorrelationID(correlationId);
+        return request;
+    }
+
+    /**
+     * Check if a destination matches one of the subscribed topics.
+     */
+    static boolean isSubscribed(Set<String> topics, String name)
+    {
+        for (String topic : topics) {
+            if (matches(topic, name))
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * Match a destination name against an ActiveMQ topic, where * matches
+     * one element of the name and > matches all the remaining elements.
+     */
+    static boolean matches(String topic, String name)
+    {
+        String[] patterns = topic.split("\\.", -1);
+        String[] elements = name.split("\\.", -1);
+        for (int i = 0; i < patterns.length; i++) {
+            if (patterns[i].equals(">"))
+                return true;
+            if (i >= elements.length)
+                return false;
+            if (!patterns[i].equals("*") && !patterns[i].equals(elements[i]))
+                return false;
+        }
+        return patterns.length == elements.length;
+    }
+
+    /**
+     * Check if an ActiveMQ destination name contains wildcards
+     */
+    static boolean isWildcard(String destination)
+    {
+        return destination.indexOf('*') >= 0 || destination.indexOf('>') >= 0;
+    }
+
+    /**
+     * Remove the xxx:// prepended in front of ActiveMQ destinations.
+     */
+    static String physicalName(String destination)
+    {
+        if (destination == null)
+            return "";
+        int index = destination.indexOf("://");
+        return index < 0 ? destination : destination.substring(index + 3);
+    }
+
+    /**
+     * Close the monitor sessions
+     */
+    void close()
+    {
+        for (Session session : new Session[] { advisorySession, statisticsSession }) {
+            if (session == null)
+                continue;
+            try {
+                session.close();
+            }
+            catch (JMSException e) {
+                logger.debug("Unable to close monitor session: {}", e);
+            }
+        }
+        advisorySession = null;
+        statisticsSession = null;
+    }
+}
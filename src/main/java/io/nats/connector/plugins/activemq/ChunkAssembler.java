@@ -0,0 +1,229 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.nio.ByteBuffer;
+import java.util.BitSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Reassembles message bodies that the ActiveMQ plugin has split into
+ * chunks to stay under the NATS server max_payload.
+ *
+ * Every chunk starts with a fixed size big-endian header:
+ *
+ *  int  magic (0x4E43484B, "NCHK")
+ *  long message identifier
+ *  int  sequence number of the chunk (starting at 0)
+ *  int  total number of chunks
+ *  long total length of the body
+ *  long offset of the chunk data in the body
+ *
+ * followed by the chunk data.  Payloads that are not chunks are returned
+ * as is, so a subscriber can simply pass everything it receives through
+ * {@link #add(byte[])}.  When chunking is enabled, the plugin frames every
+ * body starting with the magic as a chunk, even if it fits in one payload.
+ *
+ * Chunks travel over core NATS and can be lost, so partially received
+ * bodies are bounded: the oldest one is evicted when too many are pending
+ * or once it is older than the maximum age, and bodies above the maximum
+ * length are refused before anything is allocated.
+ */
+public class ChunkAssembler
+{
+    /**
+     * Chunk header identifier and size
+     */
+    static public final int MAGIC = 0x4E43484B;
+    static public final int HEADER_LENGTH = 36;
+
+    /**
+     * Default limits of the partially received bodies
+     */
+    static public final int DEFAULT_MAX_PENDING = 16;
+    static public final int DEFAULT_MAX_BODY_LENGTH = 64 * 1024 * 1024;
+    static public final long DEFAULT_MAX_AGE = 60000;
+
+    /**
+     * Partially received body
+     */
+    private static class Partial
+    {
+        final byte[] body;
+        final int total;
+        final BitSet received = new BitSet();
+        final long created = System.nanoTime();
+        long receivedLength = 0;
+
+        Partial(int length, int total)
+        {
+            this.body = new byte[length];
+            this.total = total;
+        }
+    }
+
+    /**
+     * Partial bodies in arrival order of their first chunk, oldest first
+     */
+    private final Map<Long, Partial> partials = new LinkedHashMap<Long, Partial>();
+    private final int maxPending;
+    private final int maxBodyLength;
+    private final long maxAge;
+    private long evicted = 0;
+
+    /**
+     * Assembler with the default limits
+     */
+    public ChunkAssembler()
+    {
+        this(DEFAULT_MAX_PENDING, DEFAULT_MAX_BODY_LENGTH, DEFAULT_MAX_AGE);
+    }
+
+    /**
+     * @param maxPending - maximum number of partially received bodies
+     * @param maxBodyLength - maximum length of a body in bytes
+     * @param maxAge - time in milliseconds after which a partially received
+     *  body is dropped
+     */
+    public ChunkAssembler(int maxPending, int maxBodyLength, long maxAge)
+    {
+        if (maxPending < 1 || maxBodyLength < 0 || maxAge < 0)
+            throw new IllegalArgumentException("Invalid chunk assembler limits");
+        this.maxPending = maxPending;
+        this.maxBodyLength = maxBodyLength;
+        this.maxAge = maxAge;
+    }
+
+    /**
+     * Check if the payload carries a chunk header.
+     *
+     * @param payload - NATS message data
+     * @return true if the payload is a chunk
+     */
+    public static boolean isChunk(byte[] payload)
+    {
+        return payload != null
+            && payload.length >= HEADER_LENGTH
+            && ByteBuffer.wrap(payload).getInt() == MAGIC;
+    }
+
+    /**
+     * Add a received payload.
+     *
+     * @param payload - NATS message data
+     * @return the complete body once the last missing chunk is added, the
+     *  payload itself if it is not a chunk, null otherwise
+     * @throws IllegalArgumentException if the chunk header is inconsistent,
+     *  the chunks do not add up to the body or the body is longer than the
+     *  maximum length
+     */
+    public synchronized byte[] add(byte[] payload)
+    {
+        if (!isChunk(payload))
+            return payload;
+
+        ByteBuffer header = ByteBuffer.wrap(payload);
+        header.getInt();
+        long id = header.getLong();
+        int seq = header.getInt();
+        int total = header.getInt();
+        long length = header.getLong();
+        long offset = header.getLong();
+        int dataLength = payload.length - HEADER_LENGTH;
+
+        // Every chunk carries data, so there are at most as many as bytes
+        if (length > Integer.MAX_VALUE || total < 1 || total > length
+            || seq < 0 || seq >= total || dataLength == 0
+            || offset < 0 || offset + dataLength > length)
+            throw new IllegalArgumentException("Invalid chunk header for message " + id);
+        if (length > maxBodyLength)
+            throw new IllegalArgumentException("Message " + id + " of " + length
+                + " bytes is longer than " + maxBodyLength + " bytes");
+
+        evictExpired();
+
+        Partial partial = partials.get(id);
+        if (partial == null) {
+            while (partials.size() >= maxPending)
+                evictOldest();
+            partial = new Partial((int) length, total);
+            partials.put(id, partial);
+        } else if (partial.body.length != length || partial.total != total) {
+            throw new IllegalArgumentException("Chunk does not match message " + id);
+        }
+
+        if (partial.received.get(seq))
+            return null;
+        if (partial.receivedLength + dataLength > length) {
+            partials.remove(id);
+            throw new IllegalArgumentException("Chunks longer than message " + id);
+        }
+        System.arraycopy(payload, HEADER_LENGTH, partial.body, (int) offset, dataLength);
+        partial.received.set(seq);
+        partial.receivedLength += dataLength;
+
+        if (partial.received.cardinality() < partial.total)
+            return null;
+
+        partials.remove(id);
+        if (partial.receivedLength != length)
+            throw new IllegalArgumentException("Chunks shorter than message " + id);
+        return partial.body;
+    }
+
+    /**
+     * Drop the partial bodies older than the maximum age
+     */
+    private void evictExpired()
+    {
+        long now = System.nanoTime();
+        Iterator<Partial> it = partials.values().iterator();
+        while (it.hasNext()) {
+            if ((now - it.next().created) / 1000000 < maxAge)
+                break;
+            it.remove();
+            evicted++;
+        }
+    }
+
+    /**
+     * Drop the oldest partial body
+     */
+    private void evictOldest()
+    {
+        Iterator<Partial> it = partials.values().iterator();
+        it.next();
+        it.remove();
+        evicted++;
+    }
+
+    /**
+     * @return number of bodies waiting for missing chunks
+     */
+    public synchronized int pending()
+    {
+        return partials.size();
+    }
+
+    /**
+     * @return number of partially received bodies dropped because of the
+     *  pending or age limits
+     */
+    public synchronized long evicted()
+    {
+        return evicted;
+    }
+
+    /**
+     * Drop every partially received body, for example after a NATS
+     * reconnect where chunks may have been lost.
+     */
+    public synchronized void clear()
+    {
+        partials.clear();
+    }
+}
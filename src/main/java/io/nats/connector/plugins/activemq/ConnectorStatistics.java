@@ -0,0 +1,155 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counters of the messages handled by the connector itself, reported next
+ * to the broker statistics by {@link BrokerMonitor}.
+ */
+class ConnectorStatistics
+{
+    private volatile long startTime = System.nanoTime();
+    private final AtomicLong firstForward = new AtomicLong(-1);
+    private final AtomicLong forwarded = new AtomicLong();
+    private final AtomicLong published = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final ConcurrentMap<String, LastForward> lastForwards = new ConcurrentHashMap<String, LastForward>();
+    private volatile long lastForwardTime = 0;
+
+    /**
+     * Last message forwarded from a destination
+     */
+    private static class LastForward
+    {
+        volatile long time;
+        volatile long lag = -1;
+    }
+
+    /**
+     * Mark the connector startup, the reference of the time to first
+     * forwarded message.
+     */
+    void started()
+    {
+        startTime = System.nanoTime();
+    }
+
+    /**
+     * Count a message forwarded from ActiveMQ to NATS.
+     *
+     * @param destination - ActiveMQ destination name
+     * @param timestamp - JMSTimestamp of the message, 0 if not set
+     * @return true for the first message forwarded since startup
+     */
+    boolean forwarded(String destination, long timestamp)
+    {
+        forwarded.incrementAndGet();
+        boolean first = firstForward.get() < 0
+            && firstForward.compareAndSet(-1, getUptime());
+
+        long now = System.currentTimeMillis();
+        lastForwardTime = now;
+        LastForward last = lastForwards.get(destination);
+        if (last == null) {
+            lastForwards.putIfAbsent(destination, new LastForward());
+            last = lastForwards.get(destination);
+        }
+        last.time = now;
+        last.lag = timestamp == 0 ? -1 : now - timestamp;
+        return first;
+    }
+
+    /**
+     * Count messages published from NATS to ActiveMQ.
+     *
+     * @param count - number of messages committed
+     */
+    void published(int count)
+    {
+        published.addAndGet(count);
+    }
+
+    /**
+     * Count a NATS message dropped because the publish queue was full.
+     *
+     * @return number of messages dropped so far
+     */
+    long dropped()
+    {
+        return dropped.incrementAndGet();
+    }
+
+    /**
+     * @return milliseconds since startup
+     */
+    long getUptime()
+    {
+        return (System.nanoTime() - startTime) / 1000000;
+    }
+
+    /**
+     * @return milliseconds from startup to the first forwarded message, -1
+     *  if none was forwarded yet
+     */
+    long getTimeToFirstForward()
+    {
+        return firstForward.get();
+    }
+
+    long getForwarded()
+    {
+        return forwarded.get();
+    }
+
+    long getPublished()
+    {
+        return published.get();
+    }
+
+    long getDropped()
+    {
+        return dropped.get();
+    }
+
+    /**
+     * @return time in milliseconds of the last message forwarded, 0 if none
+     */
+    long getLastForwardTime()
+    {
+        return lastForwardTime;
+    }
+
+    /**
+     * @return age in milliseconds of the last message forwarded when it was
+     *  forwarded, per destination with message timestamps
+     */
+    Map<String, Long> getLags()
+    {
+        Map<String, Long> snapshot = new HashMap<String, Long>();
+        for (Map.Entry<String, LastForward> entry : lastForwards.entrySet()) {
+            long lag = entry.getValue().lag;
+            if (lag >= 0)
+                snapshot.put(entry.getKey(), lag);
+        }
+        return snapshot;
+    }
+
+    /**
+     * @return time in milliseconds of the last message forwarded, per destination
+     */
+    Map<String, Long> getLastForwardTimes()
+    {
+        Map<String, Long> snapshot = new HashMap<String, Long>();
+        for (Map.Entry<String, LastForward> entry : lastForwards.entrySet())
+            snapshot.put(entry.getKey(), entry.getValue().time);
+        return snapshot;
+    }
+}
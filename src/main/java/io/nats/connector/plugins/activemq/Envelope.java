@@ -0,0 +1,240 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.nio.charset.Charset;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoder for the envelope the ActiveMQ plugin optionally wraps around
+ * message bodies to carry the JMS headers and properties.
+ *
+ * The envelope is big-endian binary:
+ *
+ *  int    magic (0x4E454E56, "NENV")
+ *  byte   version
+ *  string JMSDestination
+ *  long   JMSTimestamp
+ *  byte   JMSPriority
+ *  string JMSMessageID
+ *  string JMSCorrelationID
+ *  string JMSType
+ *  varint number of properties, each as
+ *         string name, byte type, value
+ *
+ * followed by the body up to the end of the payload.  Strings are a varint
+ * of the UTF-8 length plus one (0 for null) followed by the bytes.  Varints
+ * are unsigned, 7 bits per byte, least significant group first.
+ *
+ * When chunking is enabled, the payload must first be rebuilt with
+ * {@link ChunkAssembler}.
+ */
+public class Envelope
+{
+    /**
+     * Envelope identifier and version
+     */
+    static public final int MAGIC = 0x4E454E56;
+    static public final byte VERSION = 1;
+
+    /**
+     * Property value types
+     */
+    static final byte TYPE_STRING = 'S';
+    static final byte TYPE_BOOLEAN = 'Z';
+    static final byte TYPE_BYTE = 'B';
+    static final byte TYPE_SHORT = 'H';
+    static final byte TYPE_INT = 'I';
+    static final byte TYPE_LONG = 'J';
+    static final byte TYPE_FLOAT = 'F';
+    static final byte TYPE_DOUBLE = 'D';
+
+    static final Charset UTF8 = Charset.forName("UTF-8");
+
+    private String destination;
+    private long timestamp;
+    private int priority;
+    private String messageId;
+    private String correlationId;
+    private String type;
+    private Map<String, Object> properties;
+    private byte[] payload;
+    private int bodyOffset;
+
+    private Envelope() {}
+
+    /**
+     * Check if the payload starts with an envelope header.
+     *
+     * @param payload - NATS message data
+     * @return true if the payload is an envelope
+     */
+    public static boolean isEnvelope(byte[] payload)
+    {
+        return payload != null
+            && payload.length > 5
+            && ((payload[0] & 0xFF) << 24 | (payload[1] & 0xFF) << 16
+                | (payload[2] & 0xFF) << 8 | (payload[3] & 0xFF)) == MAGIC;
+    }
+
+    /**
+     * Decode an envelope.  The body is not copied.
+     *
+     * @param payload - NATS message data
+     * @return decoded envelope
+     * @throws IllegalArgumentException if the payload is not a valid envelope
+     */
+    public static Envelope decode(byte[] payload)
+    {
+        if (!isEnvelope(payload))
+            throw new IllegalArgumentException("Payload is not an envelope");
+        if (payload[4] != VERSION)
+            throw new IllegalArgumentException("Unsupported envelope version " + payload[4]);
+
+        Reader reader = new Reader(payload, 5);
+        Envelope envelope = new Envelope();
+        try {
+            envelope.destination = reader.readString();
+            envelope.timestamp = reader.readLong();
+            envelope.priority = reader.readByte();
+            envelope.messageId = reader.readString();
+            envelope.correlationId = reader.readString();
+            envelope.type = reader.readString();
+
+            int count = (int) reader.readVarint();
+            Map<String, Object> properties = new LinkedHashMap<String, Object>();
+            for (int i = 0; i < count; i++) {
+                String name = reader.readString();
+                properties.put(name, reader.readValue());
+            }
+            envelope.properties = Collections.unmodifiableMap(properties);
+        }
+        catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("Truncated envelope");
+        }
+        envelope.payload = payload;
+        envelope.bodyOffset = reader.position;
+        return envelope;
+    }
+
+    public String getDestination() { return destination; }
+
+    public long getTimestamp() { return timestamp; }
+
+    public int getPriority() { return priority; }
+
+    public String getMessageId() { return messageId; }
+
+    public String getCorrelationId() { return correlationId; }
+
+    public String getType() { return type; }
+
+    /**
+     * @return user properties, in the order they were encoded
+     */
+    public Map<String, Object> getProperties() { return properties; }
+
+    /**
+     * @return copy of the message body
+     */
+    public byte[] getBody()
+    {
+        return Arrays.copyOfRange(payload, bodyOffset, payload.length);
+    }
+
+    /**
+     * @return offset of the body in the decoded payload
+     */
+    public int getBodyOffset() { return bodyOffset; }
+
+    /**
+     * @return length of the body
+     */
+    public int getBodyLength() { return payload.length - bodyOffset; }
+
+    /**
+     * Sequential reader over the envelope bytes
+     */
+    private static class Reader
+    {
+        final byte[] data;
+        int position;
+
+        Reader(byte[] data, int position)
+        {
+            this.data = data;
+            this.position = position;
+        }
+
+        byte readByte()
+        {
+            return data[position++];
+        }
+
+        int readInt()
+        {
+            return (readByte() & 0xFF) << 24 | (readByte() & 0xFF) << 16
+                | (readByte() & 0xFF) << 8 | (readByte() & 0xFF);
+        }
+
+        long readLong()
+        {
+            return ((long) readInt() << 32) | (readInt() & 0xFFFFFFFFL);
+        }
+
+        long readVarint()
+        {
+            long value = 0;
+            for (int shift = 0; shift < 64; shift += 7) {
+                byte b = readByte();
+                value |= (long) (b & 0x7F) << shift;
+                if ((b & 0x80) == 0)
+                    return value;
+            }
+            throw new IllegalArgumentException("Malformed varint");
+        }
+
+        String readString()
+        {
+            long length = readVarint();
+            if (length == 0)
+                return null;
+            int size = (int) (length - 1);
+            if (size < 0 || size > data.length - position)
+                throw new IllegalArgumentException("Truncated envelope");
+            String value = new String(data, position, size, UTF8);
+            position += size;
+            return value;
+        }
+
+        Object readValue()
+        {
+            byte type = readByte();
+            switch (type) {
+                case TYPE_STRING:
+                    return readString();
+                case TYPE_BOOLEAN:
+                    return readByte() != 0;
+                case TYPE_BYTE:
+                    return readByte();
+                case TYPE_SHORT:
+                    return (short) ((readByte() & 0xFF) << 8 | (readByte() & 0xFF));
+                case TYPE_INT:
+                    return readInt();
+                case TYPE_LONG:
+                    return readLong();
+                case TYPE_FLOAT:
+                    return Float.intBitsToFloat(readInt());
+                case TYPE_DOUBLE:
+                    return Double.longBitsToDouble(readLong());
+                default:
+                    throw new IllegalArgumentException("Unknown property type " + type);
+            }
+        }
+    }
+}
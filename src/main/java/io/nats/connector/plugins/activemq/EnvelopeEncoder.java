@@ -0,0 +1,277 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import javax.jms.JMSException;
+import javax.jms.Message;
+
+/**
+ * Encode the JMS headers and properties of a message in the envelope
+ * format described in {@link Envelope}.
+ *
+ * The fixed leading bytes (magic, version and destination) are built once
+ * per destination and the encoded property names once for all
+ * destinations, both in bounded caches of the most recently used entries.
+ * Each thread encodes in its own reusable buffer, walking the property
+ * names once, so a message only allocates its returned header.
+ */
+class EnvelopeEncoder
+{
+    /**
+     * Default number of destinations and property names cached
+     */
+    static final int DEFAULT_MAX_DESTINATIONS = 1000;
+    static final int DEFAULT_MAX_NAMES = 1000;
+
+    /**
+     * Largest buffer kept by a thread between messages
+     */
+    static final int MAX_RETAINED_BUFFER = 64 * 1024;
+
+    /**
+     * Growable big-endian byte buffer
+     */
+    private static class Output
+    {
+        byte[] bytes = new byte[256];
+        int length = 0;
+
+        void reset()
+        {
+            if (bytes.length > MAX_RETAINED_BUFFER)
+                bytes = new byte[256];
+            length = 0;
+        }
+
+        private void ensure(int size)
+        {
+            if (length + size > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(2 * bytes.length, length + size));
+        }
+
+        void writeByte(int value)
+        {
+            ensure(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void write(byte[] value, int offset, int size)
+        {
+            ensure(size);
+            System.arraycopy(value, offset, bytes, length, size);
+            length += size;
+        }
+
+        void write(byte[] value)
+        {
+            write(value, 0, value.length);
+        }
+
+        void writeShort(int value)
+        {
+            writeByte(value >>> 8);
+            writeByte(value);
+        }
+
+        void writeInt(int value)
+        {
+            writeShort(value >>> 16);
+            writeShort(value);
+        }
+
+        void writeLong(long value)
+        {
+            writeInt((int) (value >>> 32));
+            writeInt((int) value);
+        }
+
+        void writeVarint(long value)
+        {
+            while ((value & ~0x7FL) != 0) {
+                writeByte((int) ((value & 0x7F) | 0x80));
+                value >>>= 7;
+            }
+            writeByte((int) value);
+        }
+
+        void writeString(String value)
+        {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] encoded = value.getBytes(Envelope.UTF8);
+            writeVarint(encoded.length + 1L);
+            write(encoded);
+        }
+    }
+
+    /**
+     * Buffers of the encoding threads, the header and the properties are
+     * written apart since the property count is only known at the end
+     */
+    private final ThreadLocal<Output[]> buffers = new ThreadLocal<Output[]>() {
+        @Override
+        protected Output[] initialValue()
+        {
+            return new Output[] { new Output(), new Output() };
+        }
+    };
+
+    private final Map<String, byte[]> prefixes;
+    private final Map<String, byte[]> names;
+
+    /**
+     * Encoder with the default cache sizes
+     */
+    EnvelopeEncoder()
+    {
+        this(DEFAULT_MAX_DESTINATIONS, DEFAULT_MAX_NAMES);
+    }
+
+    /**
+     * @param maxDestinations - number of destination prefixes cached
+     * @param maxNames - number of encoded property names cached
+     */
+    EnvelopeEncoder(int maxDestinations, int maxNames)
+    {
+        this.prefixes = cache(maxDestinations);
+        this.names = cache(maxNames);
+    }
+
+    /**
+     * Least recently used cache
+     */
+    private static Map<String, byte[]> cache(final int maxSize)
+    {
+        return Collections.synchronizedMap(new LinkedHashMap<String, byte[]>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, byte[]> eldest)
+            {
+                return size() > maxSize;
+            }
+        });
+    }
+
+    /**
+     * Encode the envelope header of a message.  The body is expected to
+     * follow the returned bytes.
+     *
+     * @param destination - ActiveMQ destination of the message
+     * @param message - ActiveMQ message
+     * @return envelope header
+     * @throws JMSException
+     */
+    byte[] encode(String destination, Message message) throws JMSException
+    {
+        Output[] buffer = buffers.get();
+        Output header = buffer[0];
+        Output properties = buffer[1];
+        header.reset();
+        properties.reset();
+
+        int count = 0;
+        for (Enumeration<?> e = message.getPropertyNames(); e.hasMoreElements(); count++) {
+            String name = (String) e.nextElement();
+            properties.write(name(name));
+            writeValue(properties, message.getObjectProperty(name));
+        }
+
+        header.write(prefix(destination));
+        header.writeLong(message.getJMSTimestamp());
+        header.writeByte(message.getJMSPriority());
+        header.writeString(message.getJMSMessageID());
+        header.writeString(message.getJMSCorrelationID());
+        header.writeString(message.getJMSType());
+        header.writeVarint(count);
+
+        byte[] encoded = Arrays.copyOf(header.bytes, header.length + properties.length);
+        System.arraycopy(properties.bytes, 0, encoded, header.length, properties.length);
+        return encoded;
+    }
+
+    /**
+     * @return number of destination prefixes cached
+     */
+    int destinations()
+    {
+        return prefixes.size();
+    }
+
+    /**
+     * @return number of property names cached
+     */
+    int names()
+    {
+        return names.size();
+    }
+
+    /**
+     * Cached magic, version and destination
+     */
+    private byte[] prefix(String destination)
+    {
+        byte[] prefix = prefixes.get(destination);
+        if (prefix == null) {
+            Output out = new Output();
+            out.writeInt(Envelope.MAGIC);
+            out.writeByte(Envelope.VERSION);
+            out.writeString(destination);
+            prefix = Arrays.copyOf(out.bytes, out.length);
+            prefixes.put(destination, prefix);
+        }
+        return prefix;
+    }
+
+    /**
+     * Cached encoded property name
+     */
+    private byte[] name(String name)
+    {
+        byte[] encoded = names.get(name);
+        if (encoded == null) {
+            Output out = new Output();
+            out.writeString(name);
+            encoded = Arrays.copyOf(out.bytes, out.length);
+            names.put(name, encoded);
+        }
+        return encoded;
+    }
+
+    private static void writeValue(Output out, Object value)
+    {
+        if (value instanceof Boolean) {
+            out.writeByte(Envelope.TYPE_BOOLEAN);
+            out.writeByte((Boolean) value ? 1 : 0);
+        } else if (value instanceof Byte) {
+            out.writeByte(Envelope.TYPE_BYTE);
+            out.writeByte((Byte) value);
+        } else if (value instanceof Short) {
+            out.writeByte(Envelope.TYPE_SHORT);
+            out.writeShort((Short) value);
+        } else if (value instanceof Integer) {
+            out.writeByte(Envelope.TYPE_INT);
+            out.writeInt((Integer) value);
+        } else if (value instanceof Long) {
+            out.writeByte(Envelope.TYPE_LONG);
+            out.writeLong((Long) value);
+        } else if (value instanceof Float) {
+            out.writeByte(Envelope.TYPE_FLOAT);
+            out.writeInt(Float.floatToIntBits((Float) value));
+        } else if (value instanceof Double) {
+            out.writeByte(Envelope.TYPE_DOUBLE);
+            out.writeLong(Double.doubleToLongBits((Double) value));
+        } else {
+            out.writeByte(Envelope.TYPE_STRING);
+            out.writeString(value == null ? null : value.toString());
+        }
+    }
+}
@@ -0,0 +1,272 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.jms.BytesMessage;
+import javax.jms.JMSException;
+import javax.jms.MessageFormatException;
+
+/**
+ * Split ActiveMQ message bodies into NATS payloads no larger than the
+ * configured chunk size.  Bodies that fit are published untouched, others
+ * are published as a sequence of chunks using the header described in
+ * {@link ChunkAssembler}.  A body that fits but starts like a chunk header
+ * is published as a single chunk, so a subscriber never mistakes it for
+ * one.
+ *
+ * Bodies are read through the JMS stream API (or encoded incrementally
+ * for text) so the copies made to publish them are bounded by the chunk
+ * size.  The received JMS message itself still holds the whole body.
+ * An optional prefix, such as an {@link Envelope} header, is streamed
+ * in front of the body.
+ */
+class MessageChunker
+{
+    /**
+     * Receiver of the produced payloads
+     */
+    interface Publisher
+    {
+        void publish(String subject, byte[] payload);
+    }
+
+    /**
+     * Smallest amount of data a chunk can carry
+     */
+    static final int MIN_DATA_LENGTH = 64;
+
+    /**
+     * Empty prefix
+     */
+    static final byte[] NO_PREFIX = new byte[0];
+
+    private final int chunkSize;
+    private final int dataLength;
+    private final Charset charset = Charset.defaultCharset();
+    private final AtomicLong nextId = new AtomicLong(new Random().nextLong());
+
+    /**
+     * @param chunkSize - maximum NATS payload size, header included, 0 to
+     *  never split
+     */
+    MessageChunker(int chunkSize)
+    {
+        if (chunkSize < 0 || (chunkSize > 0 && chunkSize < ChunkAssembler.HEADER_LENGTH + MIN_DATA_LENGTH))
+            throw new IllegalArgumentException("Chunk size must be 0 or at least "
+                + (ChunkAssembler.HEADER_LENGTH + MIN_DATA_LENGTH) + " bytes");
+        this.chunkSize = chunkSize;
+        this.dataLength = chunkSize - ChunkAssembler.HEADER_LENGTH;
+    }
+
+    /**
+     * Publish the body of a bytes message.
+     *
+     * @see #publish(Publisher, String, byte[], BytesMessage)
+     */
+    void publish(Publisher publisher, String subject, BytesMessage message) throws JMSException
+    {
+        publish(publisher, subject, NO_PREFIX, message);
+    }
+
+    /**
+     * Publish the body of a bytes message.  The message is read from its
+     * current position, normally the start of the body.
+     *
+     * @param publisher - receiver of the payloads
+     * @param subject - NATS subject
+     * @param prefix - bytes sent in front of the body
+     * @param message - ActiveMQ message
+     * @throws JMSException
+     */
+    void publish(Publisher publisher, String subject, byte[] prefix, BytesMessage message) throws JMSException
+    {
+        long length = prefix.length + message.getBodyLength();
+        if (chunkSize == 0 || length <= chunkSize) {
+            if (length > Integer.MAX_VALUE)
+                throw new MessageFormatException("Body too large, a chunk size is required");
+            int bodyLength = (int) length - prefix.length;
+            byte[] payload = Arrays.copyOf(prefix, (int) length);
+            readBytes(message, payload, prefix.length, bodyLength,
+                prefix.length == 0 ? null : new byte[bodyLength]);
+            publishWhole(publisher, subject, payload);
+            return;
+        }
+
+        int total = (int) ((length + dataLength - 1) / dataLength);
+        long id = nextId.getAndIncrement();
+        byte[] buffer = new byte[dataLength];
+        byte[] scratch = new byte[dataLength];
+        long offset = 0;
+        for (int seq = 0; seq < total; seq++) {
+            int size = (int) Math.min(dataLength, length - offset);
+            int fromPrefix = (int) Math.max(0, Math.min(size, prefix.length - offset));
+            if (fromPrefix > 0)
+                System.arraycopy(prefix, (int) offset, buffer, 0, fromPrefix);
+            readBytes(message, buffer, fromPrefix, size - fromPrefix, scratch);
+            publisher.publish(subject, chunk(id, seq, total, length, offset, buffer, 0, size));
+            offset += size;
+        }
+    }
+
+    /**
+     * Publish the body of a text message.
+     *
+     * @see #publish(Publisher, String, byte[], String)
+     */
+    void publish(Publisher publisher, String subject, String text)
+    {
+        publish(publisher, subject, NO_PREFIX, text);
+    }
+
+    /**
+     * Publish the body of a text message, encoded with the platform charset.
+     *
+     * @param publisher - receiver of the payloads
+     * @param subject - NATS subject
+     * @param prefix - bytes sent in front of the body
+     * @param text - ActiveMQ message body
+     */
+    void publish(Publisher publisher, String subject, byte[] prefix, String text)
+    {
+        CharsetEncoder encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        if (chunkSize == 0 || prefix.length + text.length() * encoder.maxBytesPerChar() <= chunkSize) {
+            publishWhole(publisher, subject, concat(prefix, text.getBytes(charset)));
+            return;
+        }
+
+        // First pass only measures the body so the headers can carry the totals
+        ByteBuffer buffer = ByteBuffer.allocate(dataLength);
+        ByteBuffer head = ByteBuffer.wrap(prefix);
+        CharBuffer in = CharBuffer.wrap(text);
+        int total = 0;
+        long length = 0;
+        boolean done;
+        do {
+            // Called through Buffer, the ByteBuffer overloads only exist since Java 9
+            ((Buffer) buffer).clear();
+            done = fill(encoder, head, in, buffer);
+            total++;
+            length += buffer.position();
+        } while (!done);
+
+        if (length <= chunkSize) {
+            publishWhole(publisher, subject, concat(prefix, text.getBytes(charset)));
+            return;
+        }
+
+        long id = nextId.getAndIncrement();
+        long offset = 0;
+        encoder.reset();
+        head = ByteBuffer.wrap(prefix);
+        in = CharBuffer.wrap(text);
+        for (int seq = 0; seq < total; seq++) {
+            ((Buffer) buffer).clear();
+            fill(encoder, head, in, buffer);
+            publisher.publish(subject, chunk(id, seq, total, length, offset, buffer.array(), 0, buffer.position()));
+            offset += buffer.position();
+        }
+    }
+
+    /**
+     * Publish a payload no larger than the chunk size, framed as a single
+     * chunk if the assembler would take it for one.
+     */
+    private void publishWhole(Publisher publisher, String subject, byte[] payload)
+    {
+        if (chunkSize == 0 || !ChunkAssembler.isChunk(payload)) {
+            publisher.publish(subject, payload);
+            return;
+        }
+
+        // The header makes the payload longer, it may take two chunks
+        int total = (payload.length + dataLength - 1) / dataLength;
+        long id = nextId.getAndIncrement();
+        int offset = 0;
+        for (int seq = 0; seq < total; seq++) {
+            int size = Math.min(dataLength, payload.length - offset);
+            publisher.publish(subject, chunk(id, seq, total, payload.length, offset, payload, offset, size));
+            offset += size;
+        }
+    }
+
+    /**
+     * Read exactly length bytes of the message body at the offset of the
+     * buffer.  JMS only reads at the start of an array, the scratch array
+     * is used when the offset is not 0.
+     */
+    private static void readBytes(BytesMessage message, byte[] buffer, int offset, int length, byte[] scratch)
+        throws JMSException
+    {
+        if (length == 0)
+            return;
+        byte[] target = offset == 0 ? buffer : scratch;
+        if (message.readBytes(target, length) != length)
+            throw new MessageFormatException("Body shorter than its declared length");
+        if (target != buffer)
+            System.arraycopy(scratch, 0, buffer, offset, length);
+    }
+
+    /**
+     * Copy the prefix then encode text until the buffer is full or the
+     * text is exhausted.
+     *
+     * @return true once the prefix and all the text have been written
+     */
+    private static boolean fill(CharsetEncoder encoder, ByteBuffer head, CharBuffer in, ByteBuffer out)
+    {
+        if (head.hasRemaining()) {
+            int size = Math.min(head.remaining(), out.remaining());
+            out.put(head.array(), head.position(), size);
+            ((Buffer) head).position(head.position() + size);
+            if (head.hasRemaining())
+                return false;
+        }
+        if (encoder.encode(in, out, true).isOverflow())
+            return false;
+        return encoder.flush(out).isUnderflow();
+    }
+
+    /**
+     * Join the prefix and body in a single payload.
+     */
+    private static byte[] concat(byte[] prefix, byte[] body)
+    {
+        if (prefix.length == 0)
+            return body;
+        byte[] payload = Arrays.copyOf(prefix, prefix.length + body.length);
+        System.arraycopy(body, 0, payload, prefix.length, body.length);
+        return payload;
+    }
+
+    /**
+     * Build a chunk payload, header followed by data.
+     */
+    private static byte[] chunk(long id, int seq, int total, long length, long offset,
+        byte[] data, int from, int dataLength)
+    {
+        byte[] payload = new byte[ChunkAssembler.HEADER_LENGTH + dataLength];
+        ByteBuffer.wrap(payload)
+            .putInt(ChunkAssembler.MAGIC)
+            .putLong(id)
+            .putInt(seq)
+            .putInt(total)
+            .putLong(length)
+            .putLong(offset)
+            .put(data, from, dataLength);
+        return payload;
+    }
+}
@@ -4,11 +4,15 @@
 
 package io.nats.connector.plugins.activemq;
 
+import java.io.File;
+import java.io.FileWriter;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
+import javax.jms.BytesMessage;
 import javax.jms.DeliveryMode;
 import javax.jms.Destination;
+import javax.jms.MessageConsumer;
 import javax.jms.MessageProducer;
 import javax.jms.Session;
 
@@ -30,6 +34,7 @@ import io.nats.connector.Connector;
 public class ActiveMQPluginTest 
 {
     static final String ACTIVEMQ_PAYLOAD = "Hello from ActiveMQ!";
+    static final String NATS_PAYLOAD = "Hello from NATS!";
     static final String ACTIVEMQ_URI = "failover:(tcp://localhost:61616)";
 
     Logger logger = null;
@@ -240,10 +245,97 @@ public class ActiveMQPluginTest
     }
 
 
+    /**
+     * Simulates a simple NATS publisher.
+     */
+    class NatsPublisher extends TestClient implements Runnable
+    {
+        String subject;
+
+        NatsPublisher(String id, String subject, int count)
+        {
+            super(id, count);
+            logger.debug("Creating NATS Publisher ({})", id);
+            this.subject = subject;
+        }
+
+        @Override
+        public void run() {
+            try {
+                io.nats.client.Connection c = new ConnectionFactory().createConnection();
+
+                for (int i = 0; i < testCount; i++) {
+                    c.publish(subject, NATS_PAYLOAD.getBytes());
+                    tallyMessage();
+                }
+                c.flush();
+
+                logger.debug("NATS Publisher ({}) :  Published {} messages", id, testCount);
+
+                c.close();
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+            }
+
+            setComplete();
+        }
+    }
+
+    /**
+     * Simulates a simple ActiveMQ subscriber.
+     */
+    class ActiveMQSubscriber extends TestClient implements Runnable
+    {
+        String topic;
+
+        ActiveMQSubscriber(String id, String topic, int count)
+        {
+            super(id, count);
+            logger.debug("Creating ActiveMQ Subscriber ({})", id);
+            this.topic = topic;
+        }
+
+        @Override
+        public void run() {
+            try {
+                ActiveMQConnectionFactory connectionFactory = new ActiveMQConnectionFactory(ACTIVEMQ_URI);
+                javax.jms.Connection connection = connectionFactory.createConnection();
+                connection.start();
+
+                Session session = connection.createSession(false, Session.AUTO_ACKNOWLEDGE);
+                MessageConsumer consumer = session.createConsumer(session.createTopic(this.topic));
+
+                setReady();
+
+                for (int i = 0; i < testCount; i++) {
+                    BytesMessage message = (BytesMessage) consumer.receive();
+                    byte[] payload = new byte[(int) message.getBodyLength()];
+                    message.readBytes(payload);
+                    org.junit.Assert.assertTrue(NATS_PAYLOAD.equals(new String(payload)));
+                    org.junit.Assert.assertTrue(message.propertyExists(ActiveMQPlugin.ORIGIN_PROPERTY));
+                    tallyMessage();
+                }
+
+                logger.debug("ActiveMQ Subscriber ({}) Received {} messages.  Completed.", id, testCount);
+
+                session.close();
+                connection.close();
+            }
+            catch (Exception ex) {
+                ex.printStackTrace();
+            }
+
+            setComplete();
+        }
+    }
+
+
     @Before
     public void initialize()
     {
         System.setProperty(Connector.PLUGIN_CLASS, ActiveMQPlugin.class.getName());
+        System.clearProperty(ActiveMQPlugin.PROPERTY_FILE);
         logger = LoggerFactory.getLogger(ActiveMQPluginTest.class);
     }
 
@@ -279,4 +371,48 @@ public class ActiveMQPluginTest
 
         c.shutdown();
     }
+
+    @Test
+    public void testNatsToActiveMQ() throws Exception {
+
+        File config = File.createTempFile("activemq", ".properties");
+        config.deleteOnExit();
+        FileWriter writer = new FileWriter(config);
+        try {
+            writer.write(ActiveMQPlugin.PROPERTY_PUBLISH_SUBJECTS + "=junit.nats.publish\n");
+        }
+        finally {
+            writer.close();
+        }
+        System.setProperty(ActiveMQPlugin.PROPERTY_FILE, config.getPath());
+
+        Connector c = new Connector();
+
+        ExecutorService executor = Executors.newFixedThreadPool(6);
+
+        NatsPublisher  np = new NatsPublisher("nats", "junit.nats.publish",  5);
+        ActiveMQSubscriber  as = new ActiveMQSubscriber("amq", "junit.nats.publish", 5);
+
+        // start the connector
+        executor.execute(c);
+
+        // start the subsciber app
+        executor.execute(as);
+
+        // wait for subscriber to be ready.
+        as.waitUntilReady();
+
+        // let the connector start
+        Thread.sleep(2000);
+
+        // start the publisher
+        executor.execute(np);
+
+        // wait for the subscriber to complete.
+        as.waitForCompletion();
+
+        Assert.assertTrue("Invalid count", as.getMessageCount() == 5);
+
+        c.shutdown();
+    }
 }
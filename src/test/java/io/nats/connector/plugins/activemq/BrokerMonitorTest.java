@@ -0,0 +1,89 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+import org.junit.*;
+
+
+/**
+ * Unit test for the monitor calculations and the connector statistics.
+ */
+public class BrokerMonitorTest
+{
+    @Test
+    public void testPhysicalName()
+    {
+        Assert.assertEquals("eew.alert", BrokerMonitor.physicalName("topic://eew.alert"));
+        Assert.assertEquals("eew.alert", BrokerMonitor.physicalName("eew.alert"));
+        Assert.assertEquals("", BrokerMonitor.physicalName(null));
+    }
+
+    @Test
+    public void testIsWildcard()
+    {
+        Assert.assertTrue(BrokerMonitor.isWildcard(">"));
+        Assert.assertTrue(BrokerMonitor.isWildcard("eew.*.alert"));
+        Assert.assertFalse(BrokerMonitor.isWildcard("eew.alert"));
+    }
+
+    @Test
+    public void testMatches()
+    {
+        Assert.assertTrue(BrokerMonitor.matches("eew.alert", "eew.alert"));
+        Assert.assertFalse(BrokerMonitor.matches("eew.alert", "eew.alert.1"));
+        Assert.assertTrue(BrokerMonitor.matches("eew.*.alert", "eew.dm.alert"));
+        Assert.assertFalse(BrokerMonitor.matches("eew.*.alert", "eew.alert"));
+        Assert.assertTrue(BrokerMonitor.matches("eew.>", "eew.dm.alert"));
+        Assert.assertFalse(BrokerMonitor.matches("eew.>", "other.alert"));
+
+        Set<String> topics = new LinkedHashSet<String>(Arrays.asList("eew.alert", "eew.sys.>"));
+        Assert.assertTrue(BrokerMonitor.isSubscribed(topics, "eew.sys.dm.data"));
+        Assert.assertFalse(BrokerMonitor.isSubscribed(topics, "other.alert"));
+    }
+
+    @Test
+    public void testRates()
+    {
+        BrokerMonitor.Sample previous = new BrokerMonitor.Sample(10000, 100, 90);
+        BrokerMonitor.Sample sample = new BrokerMonitor.Sample(12000, 140, 110);
+
+        Assert.assertEquals(20.0, sample.enqueueRate(previous), 1e-9);
+        Assert.assertEquals(10.0, sample.dequeueRate(previous), 1e-9);
+        Assert.assertEquals(3.0, BrokerMonitor.drainSeconds(30, 10.0), 1e-9);
+    }
+
+    @Test
+    public void testForwardStatistics()
+    {
+        ConnectorStatistics statistics = new ConnectorStatistics();
+        Assert.assertEquals(-1, statistics.getTimeToFirstForward());
+        Assert.assertEquals(0, statistics.getLastForwardTime());
+
+        long before = System.currentTimeMillis();
+        Assert.assertTrue(statistics.forwarded("topic://eew.alert", before - 500));
+        Assert.assertFalse(statistics.forwarded("topic://eew.other", 0));
+
+        Assert.assertEquals(2, statistics.getForwarded());
+        Assert.assertTrue(statistics.getTimeToFirstForward() >= 0);
+        Assert.assertTrue(statistics.getLastForwardTime() >= before);
+        Assert.assertTrue(statistics.getLags().get("topic://eew.alert") >= 500);
+        // Messages without timestamp have no lag but still count as forwarded
+        Assert.assertFalse(statistics.getLags().containsKey("topic://eew.other"));
+        Assert.assertTrue(statistics.getLastForwardTimes().get("topic://eew.other") >= before);
+    }
+
+    @Test
+    public void testDropped()
+    {
+        ConnectorStatistics statistics = new ConnectorStatistics();
+        Assert.assertEquals(1, statistics.dropped());
+        Assert.assertEquals(2, statistics.dropped());
+        Assert.assertEquals(2, statistics.getDropped());
+    }
+}
@@ -0,0 +1,222 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.Executors;
+
+import org.junit.*;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Unit test for the reloadable properties and the subscription changes
+ * applied on reload.
+ */
+public class ConfigurationReloadTest
+{
+    ActiveMQPlugin plugin;
+
+    static Set<String> set(String... entries)
+    {
+        return new LinkedHashSet<String>(Arrays.asList(entries));
+    }
+
+    static ActiveMQPlugin.ReloadableProperties topics(String topic, String publishSubjects)
+    {
+        Properties p = new Properties();
+        p.setProperty(ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC, topic);
+        p.setProperty(ActiveMQPlugin.PROPERTY_PUBLISH_SUBJECTS, publishSubjects);
+        return new ActiveMQPlugin.ReloadableProperties(p);
+    }
+
+    static void write(File file, String... lines) throws Exception
+    {
+        FileWriter writer = new FileWriter(file);
+        try {
+            for (String line : lines)
+                writer.write(line + "\n");
+        }
+        finally {
+            writer.close();
+        }
+    }
+
+    @Before
+    public void initialize()
+    {
+        System.clearProperty(ActiveMQPlugin.PROPERTY_FILE);
+        plugin = new ActiveMQPlugin();
+        plugin.logger = LoggerFactory.getLogger(ConfigurationReloadTest.class);
+    }
+
+    @Test
+    public void testSplitList()
+    {
+        Assert.assertEquals(set("a.b", "c.>", "d"), ActiveMQPlugin.splitList(" a.b, ,c.>,d,a.b "));
+        Assert.assertTrue(ActiveMQPlugin.splitList("").isEmpty());
+    }
+
+    @Test
+    public void testChanges()
+    {
+        ActiveMQPlugin.Changes changes = new ActiveMQPlugin.Changes(
+            set("kept", "removed.1", "removed.2"), set("added.1", "kept", "added.2"));
+
+        Assert.assertEquals(set("added.1", "added.2"), changes.added);
+        Assert.assertEquals(set("removed.1", "removed.2"), changes.removed);
+    }
+
+    @Test
+    public void testNoChanges()
+    {
+        ActiveMQPlugin.Changes changes = new ActiveMQPlugin.Changes(set("a", "b"), set("b", "a"));
+
+        Assert.assertTrue(changes.added.isEmpty());
+        Assert.assertTrue(changes.removed.isEmpty());
+    }
+
+    @Test
+    public void testReloadableProperties()
+    {
+        ActiveMQPlugin.ReloadableProperties defaults = new ActiveMQPlugin.ReloadableProperties(new Properties());
+        Assert.assertEquals(ActiveMQPlugin.DEFAULT_ACTIVEMQ_TIMEOUT, defaults.timeout);
+        Assert.assertEquals(ActiveMQPlugin.DEFAULT_ACTIVEMQ_TOPIC, defaults.topic);
+        Assert.assertEquals("eew.alert", defaults.mapping.toNatsTopic("topic://eew.alert"));
+
+        Properties p = new Properties();
+        p.setProperty(ActiveMQPlugin.PROPERTY_ACTIVEMQ_TIMEOUT, "500");
+        p.setProperty(ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC, "eew.>");
+        p.setProperty(ActiveMQPlugin.PROPERTY_NATS_TOPIC_PRE, "amq");
+        p.setProperty(ActiveMQPlugin.PROPERTY_NATS_TOPIC_POST, "in");
+        p.setProperty(ActiveMQPlugin.PROPERTY_PUBLISH_TOPIC_PRE, "nats");
+        ActiveMQPlugin.ReloadableProperties reloaded = new ActiveMQPlugin.ReloadableProperties(p);
+        Assert.assertEquals(500, reloaded.timeout);
+        Assert.assertEquals("eew.>", reloaded.topic);
+        Assert.assertEquals("amq.eew.alert.in", reloaded.mapping.toNatsTopic("topic://eew.alert"));
+        Assert.assertEquals("nats.eew.ack", reloaded.publishMapping.toTopic("eew.ack"));
+    }
+
+    @Test
+    public void testFilteredChangeRecreatesListeners()
+    {
+        plugin.reloadable = topics("a", "");
+        plugin.updateListeners();
+        Object unfiltered = plugin.listeners.get("a");
+        Assert.assertNotNull(unfiltered);
+
+        plugin.updateListeners();
+        Assert.assertSame(unfiltered, plugin.listeners.get("a"));
+
+        // Enabling publishing requires the origin selector
+        plugin.reloadable = topics("a", "nats.>");
+        plugin.updateListeners();
+        Object filtered = plugin.listeners.get("a");
+        Assert.assertNotSame(unfiltered, filtered);
+
+        plugin.reloadable = topics("a", "");
+        plugin.updateListeners();
+        Assert.assertNotSame(filtered, plugin.listeners.get("a"));
+        Assert.assertEquals(set("a"), plugin.listeners.keySet());
+    }
+
+    @Test
+    public void testDeadListenerIsRecreated() throws Exception
+    {
+        final PluginStubs.StubConnection broker = new PluginStubs.StubConnection();
+        broker.broken = true;
+        plugin.connection = broker.connection;
+        plugin.connector = new PluginStubs.StubConnector().connector;
+        plugin.executor = Executors.newCachedThreadPool();
+        try {
+            plugin.reloadable = topics("a", "");
+            plugin.updateListeners();
+            Assert.assertTrue("Listener did not remove itself",
+                PluginStubs.await(5000, new PluginStubs.Condition() {
+                    public boolean check() { synchronized (plugin.listeners) { return plugin.listeners.isEmpty(); } }
+                }));
+
+            broker.broken = false;
+            plugin.updateListeners();
+            Assert.assertTrue("Listener was not recreated",
+                PluginStubs.await(5000, new PluginStubs.Condition() {
+                    public boolean check() { return broker.consumers.contains("a"); }
+                }));
+            synchronized (plugin.listeners) {
+                Assert.assertEquals(set("a"), plugin.listeners.keySet());
+            }
+        }
+        finally {
+            plugin.onShutdown();
+        }
+    }
+
+    @Test
+    public void testReloadProperties() throws Exception
+    {
+        File file = File.createTempFile("activemq", ".properties");
+        try {
+            write(file, ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC + "=a,b");
+            System.setProperty(ActiveMQPlugin.PROPERTY_FILE, file.getPath());
+            plugin.reloadProperties();
+            Assert.assertEquals("a,b", plugin.reloadable.topic);
+            Assert.assertEquals(set("a", "b"), plugin.listeners.keySet());
+            Object kept = plugin.listeners.get("b");
+
+            write(file, ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC + "=b,c",
+                ActiveMQPlugin.PROPERTY_ACTIVEMQ_TIMEOUT + "=500");
+            plugin.reloadProperties();
+            Assert.assertEquals(500, plugin.reloadable.timeout);
+            Assert.assertEquals(set("b", "c"), plugin.listeners.keySet());
+            Assert.assertSame(kept, plugin.listeners.get("b"));
+
+            // A file that can not be read leaves the configuration in place
+            System.setProperty(ActiveMQPlugin.PROPERTY_FILE, file.getPath() + ".missing");
+            plugin.reloadProperties();
+            Assert.assertEquals("b,c", plugin.reloadable.topic);
+            Assert.assertEquals(set("b", "c"), plugin.listeners.keySet());
+        }
+        finally {
+            System.clearProperty(ActiveMQPlugin.PROPERTY_FILE);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWatcherReloadsRewrittenFile() throws Exception
+    {
+        File directory = Files.createTempDirectory("activemq").toFile();
+        File file = new File(directory, "activemq.properties");
+        final PluginStubs.StubConnection broker = new PluginStubs.StubConnection();
+        try {
+            write(file, ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC + "=a");
+            System.setProperty(ActiveMQPlugin.PROPERTY_FILE, file.getPath());
+            plugin.reloadProperties();
+            plugin.reload = true;
+            plugin.connection = broker.connection;
+            plugin.executor = Executors.newCachedThreadPool();
+            Assert.assertTrue(plugin.onNatsInitialized(new PluginStubs.StubConnector().connector));
+
+            write(file, ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC + "=a,watched");
+            Assert.assertTrue("Rewritten configuration was not reloaded",
+                PluginStubs.await(10000, new PluginStubs.Condition() {
+                    public boolean check() { return broker.consumers.contains("watched"); }
+                }));
+            Assert.assertEquals("a,watched", plugin.reloadable.topic);
+        }
+        finally {
+            plugin.onShutdown();
+            System.clearProperty(ActiveMQPlugin.PROPERTY_FILE);
+            file.delete();
+            directory.delete();
+        }
+    }
+}
@@ -0,0 +1,114 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.command.ActiveMQTextMessage;
+import org.junit.*;
+
+
+/**
+ * Unit test for the JMS header and property envelope.
+ */
+public class EnvelopeTest
+{
+    static final String DESTINATION = "topic://junit.nats.test";
+
+    ActiveMQTextMessage createMessage(String text) throws Exception
+    {
+        ActiveMQTextMessage message = new ActiveMQTextMessage();
+        message.setText(text);
+        message.setJMSMessageID("ID:junit-1:1:1:1:1");
+        message.setJMSCorrelationID("correlation");
+        message.setJMSTimestamp(1234567890123L);
+        message.setJMSPriority(7);
+        message.setStringProperty("origin", "junit");
+        message.setIntProperty("count", 42);
+        message.setObjectProperty("ratio", 0.5d);
+        return message;
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception
+    {
+        ActiveMQTextMessage message = createMessage("Hello from ActiveMQ!");
+        EnvelopeEncoder encoder = new EnvelopeEncoder();
+
+        final List<byte[]> payloads = new ArrayList<byte[]>();
+        MessageChunker.Publisher publisher = new MessageChunker.Publisher() {
+            @Override
+            public void publish(String subject, byte[] payload)
+            {
+                payloads.add(payload);
+            }
+        };
+        // Encode twice to go through the cached schema
+        new MessageChunker(0).publish(publisher, "junit.nats.test",
+            encoder.encode(DESTINATION, message), message.getText());
+        new MessageChunker(0).publish(publisher, "junit.nats.test",
+            encoder.encode(DESTINATION, message), message.getText());
+
+        for (byte[] payload : payloads) {
+            Assert.assertTrue(Envelope.isEnvelope(payload));
+            Envelope envelope = Envelope.decode(payload);
+            Assert.assertEquals(DESTINATION, envelope.getDestination());
+            Assert.assertEquals("ID:junit-1:1:1:1:1", envelope.getMessageId());
+            Assert.assertEquals("correlation", envelope.getCorrelationId());
+            Assert.assertNull(envelope.getType());
+            Assert.assertEquals(1234567890123L, envelope.getTimestamp());
+            Assert.assertEquals(7, envelope.getPriority());
+            Assert.assertEquals("junit", envelope.getProperties().get("origin"));
+            Assert.assertEquals(42, envelope.getProperties().get("count"));
+            Assert.assertEquals(0.5d, envelope.getProperties().get("ratio"));
+            Assert.assertEquals("Hello from ActiveMQ!", new String(envelope.getBody()));
+        }
+    }
+
+    @Test
+    public void testChunkedRoundTrip() throws Exception
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 1000; i++)
+            builder.append("line ").append(i).append('\n');
+        ActiveMQTextMessage message = createMessage(builder.toString());
+
+        final ChunkAssembler assembler = new ChunkAssembler();
+        final List<byte[]> bodies = new ArrayList<byte[]>();
+        MessageChunker.Publisher publisher = new MessageChunker.Publisher() {
+            @Override
+            public void publish(String subject, byte[] payload)
+            {
+                byte[] body = assembler.add(payload);
+                if (body != null)
+                    bodies.add(body);
+            }
+        };
+        new MessageChunker(128).publish(publisher, "junit.nats.test",
+            new EnvelopeEncoder().encode(DESTINATION, message), message.getText());
+
+        Assert.assertEquals(1, bodies.size());
+        Envelope envelope = Envelope.decode(bodies.get(0));
+        Assert.assertEquals("ID:junit-1:1:1:1:1", envelope.getMessageId());
+        Assert.assertEquals(message.getText(), new String(envelope.getBody()));
+    }
+
+    @Test
+    public void testCachesAreBounded() throws Exception
+    {
+        EnvelopeEncoder encoder = new EnvelopeEncoder(2, 3);
+        for (int i = 0; i < 10; i++) {
+            ActiveMQTextMessage message = createMessage("body " + i);
+            message.setObjectProperty("flag." + i, Boolean.TRUE);
+            Envelope envelope = Envelope.decode(encoder.encode(DESTINATION + "." + i, message));
+            Assert.assertEquals(DESTINATION + "." + i, envelope.getDestination());
+            Assert.assertEquals(Boolean.TRUE, envelope.getProperties().get("flag." + i));
+            Assert.assertEquals(42, envelope.getProperties().get("count"));
+        }
+        Assert.assertEquals(2, encoder.destinations());
+        Assert.assertEquals(3, encoder.names());
+    }
+}
@@ -0,0 +1,229 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.apache.activemq.command.ActiveMQBytesMessage;
+import org.junit.*;
+
+
+/**
+ * Unit test for message chunking and reassembly.
+ */
+public class MessageChunkerTest
+{
+    static final int CHUNK_SIZE = 128;
+
+    /**
+     * Collects published payloads.
+     */
+    class CollectingPublisher implements MessageChunker.Publisher
+    {
+        List<byte[]> payloads = new ArrayList<byte[]>();
+
+        @Override
+        public void publish(String subject, byte[] payload)
+        {
+            Assert.assertTrue(payload.length <= CHUNK_SIZE);
+            payloads.add(payload);
+        }
+
+        byte[] reassemble()
+        {
+            ChunkAssembler assembler = new ChunkAssembler();
+            byte[] body = null;
+            for (byte[] payload : payloads) {
+                Assert.assertNull(body);
+                body = assembler.add(payload);
+            }
+            Assert.assertEquals(0, assembler.pending());
+            return body;
+        }
+    }
+
+    /**
+     * Chunk with an arbitrary header
+     */
+    static byte[] chunk(int seq, int total, long length, long offset, int dataLength)
+    {
+        byte[] payload = new byte[ChunkAssembler.HEADER_LENGTH + dataLength];
+        ByteBuffer.wrap(payload)
+            .putInt(ChunkAssembler.MAGIC)
+            .putLong(1)
+            .putInt(seq)
+            .putInt(total)
+            .putLong(length)
+            .putLong(offset);
+        return payload;
+    }
+
+    @Test
+    public void testSmallTextIsNotChunked()
+    {
+        CollectingPublisher publisher = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(publisher, "junit.nats.test", "small");
+
+        Assert.assertEquals(1, publisher.payloads.size());
+        Assert.assertFalse(ChunkAssembler.isChunk(publisher.payloads.get(0)));
+        Assert.assertEquals("small", new String(publisher.reassemble()));
+    }
+
+    @Test
+    public void testLargeTextRoundTrip()
+    {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 500; i++)
+            builder.append("\u00e9v\u00e9nement ").append(i).append(' ');
+        String text = builder.toString();
+
+        CollectingPublisher publisher = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(publisher, "junit.nats.test", text);
+
+        Assert.assertTrue(publisher.payloads.size() > 1);
+        Assert.assertArrayEquals(
+            text.getBytes(Charset.defaultCharset()), publisher.reassemble());
+    }
+
+    @Test
+    public void testLargeBytesRoundTrip() throws Exception
+    {
+        byte[] body = new byte[10000];
+        for (int i = 0; i < body.length; i++)
+            body[i] = (byte) i;
+
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeBytes(body);
+        message.reset();
+
+        CollectingPublisher publisher = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(publisher, "junit.nats.test", message);
+
+        Assert.assertEquals(
+            (body.length + CHUNK_SIZE - ChunkAssembler.HEADER_LENGTH - 1)
+                / (CHUNK_SIZE - ChunkAssembler.HEADER_LENGTH),
+            publisher.payloads.size());
+        Assert.assertArrayEquals(body, publisher.reassemble());
+    }
+
+    @Test
+    public void testLostChunkIsEvicted()
+    {
+        CollectingPublisher lost = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(lost, "junit.nats.test",
+            new String(new char[1000]).replace('\0', 'a'));
+        CollectingPublisher complete = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(complete, "junit.nats.test",
+            new String(new char[1000]).replace('\0', 'b'));
+
+        ChunkAssembler assembler = new ChunkAssembler(
+            1, ChunkAssembler.DEFAULT_MAX_BODY_LENGTH, ChunkAssembler.DEFAULT_MAX_AGE);
+        // Last chunk of the first message never arrives
+        for (byte[] payload : lost.payloads.subList(0, lost.payloads.size() - 1))
+            Assert.assertNull(assembler.add(payload));
+        Assert.assertEquals(1, assembler.pending());
+
+        byte[] body = null;
+        for (byte[] payload : complete.payloads)
+            body = assembler.add(payload);
+        Assert.assertEquals(1000, body.length);
+        Assert.assertEquals('b', body[0]);
+        Assert.assertEquals(0, assembler.pending());
+        Assert.assertEquals(1, assembler.evicted());
+    }
+
+    @Test
+    public void testExpiredChunkIsEvicted()
+    {
+        CollectingPublisher publisher = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(publisher, "junit.nats.test", new String(new char[1000]));
+
+        ChunkAssembler assembler = new ChunkAssembler(
+            ChunkAssembler.DEFAULT_MAX_PENDING, ChunkAssembler.DEFAULT_MAX_BODY_LENGTH, 0);
+        Assert.assertNull(assembler.add(publisher.payloads.get(0)));
+        Assert.assertNull(assembler.add(publisher.payloads.get(1)));
+        Assert.assertEquals(1, assembler.evicted());
+    }
+
+    @Test
+    public void testBodyLongerThanMaximumIsRefused()
+    {
+        CollectingPublisher publisher = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(publisher, "junit.nats.test", new String(new char[1000]));
+
+        ChunkAssembler assembler = new ChunkAssembler(
+            ChunkAssembler.DEFAULT_MAX_PENDING, 999, ChunkAssembler.DEFAULT_MAX_AGE);
+        try {
+            assembler.add(publisher.payloads.get(0));
+            Assert.fail("Body longer than the maximum accepted");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertEquals(0, assembler.pending());
+        }
+    }
+
+    @Test
+    public void testBodyStartingWithMagicIsFramed() throws Exception
+    {
+        byte[] body = new byte[100];
+        ByteBuffer.wrap(body).putInt(ChunkAssembler.MAGIC);
+
+        ActiveMQBytesMessage message = new ActiveMQBytesMessage();
+        message.writeBytes(body);
+        message.reset();
+
+        CollectingPublisher publisher = new CollectingPublisher();
+        new MessageChunker(CHUNK_SIZE).publish(publisher, "junit.nats.test", message);
+
+        Assert.assertEquals(2, publisher.payloads.size());
+        Assert.assertArrayEquals(body, publisher.reassemble());
+
+        // Without chunking the body is published untouched
+        CollectingPublisher raw = new CollectingPublisher();
+        message.reset();
+        new MessageChunker(0).publish(raw, "junit.nats.test", message);
+        Assert.assertArrayEquals(body, raw.payloads.get(0));
+    }
+
+    @Test
+    public void testInconsistentHeaderIsRefused()
+    {
+        ChunkAssembler assembler = new ChunkAssembler();
+        byte[][] invalid = {
+            chunk(0, Integer.MAX_VALUE, 100, 0, 10),
+            chunk(0, 0, 100, 0, 10),
+            chunk(0, 2, 100, 95, 10),
+            chunk(0, 2, 100, 0, 0),
+        };
+        for (byte[] payload : invalid) {
+            try {
+                assembler.add(payload);
+                Assert.fail("Inconsistent chunk header accepted");
+            }
+            catch (IllegalArgumentException e) {
+                Assert.assertEquals(0, assembler.pending());
+            }
+        }
+    }
+
+    @Test
+    public void testChunksShorterThanBodyAreRefused()
+    {
+        ChunkAssembler assembler = new ChunkAssembler();
+        Assert.assertNull(assembler.add(chunk(0, 2, 100, 0, 10)));
+        // Duplicates are ignored
+        Assert.assertNull(assembler.add(chunk(0, 2, 100, 0, 10)));
+        try {
+            assembler.add(chunk(1, 2, 100, 10, 10));
+            Assert.fail("Incomplete body returned");
+        }
+        catch (IllegalArgumentException e) {
+            Assert.assertEquals(0, assembler.pending());
+        }
+    }
+}
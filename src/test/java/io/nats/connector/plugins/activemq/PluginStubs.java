@@ -0,0 +1,157 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import javax.jms.Connection;
+import javax.jms.JMSException;
+import javax.jms.MessageConsumer;
+import javax.jms.Session;
+
+import org.apache.activemq.command.ActiveMQTopic;
+
+import io.nats.client.Message;
+import io.nats.connector.plugin.NATSConnector;
+
+
+/**
+ * In-memory stand-ins for the ActiveMQ connection and the NATS connector,
+ * so the plugin life cycle can be driven without a broker or NATS server.
+ */
+class PluginStubs
+{
+    /**
+     * Create a proxy of an interface, methods that are not handled
+     * return the default value of their type.
+     */
+    static <T> T stub(Class<T> type, final InvocationHandler handler)
+    {
+        return type.cast(Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] { type },
+            new InvocationHandler() {
+                @Override
+                public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+                {
+                    if (method.getName().equals("toString"))
+                        return "stub " + method.getDeclaringClass().getSimpleName();
+                    if (method.getName().equals("hashCode"))
+                        return System.identityHashCode(proxy);
+                    if (method.getName().equals("equals"))
+                        return proxy == args[0];
+                    Object result = handler == null ? null : handler.invoke(proxy, method, args);
+                    Class<?> returned = method.getReturnType();
+                    if (result == null && returned.isPrimitive() && returned != void.class)
+                        return Array.get(Array.newInstance(returned, 1), 0);
+                    return result;
+                }
+            }));
+    }
+
+    /**
+     * ActiveMQ connection whose consumers never receive a message.  Session
+     * creation fails while the connection is broken.
+     */
+    static class StubConnection implements InvocationHandler
+    {
+        volatile boolean broken = false;
+        final List<String> consumers = Collections.synchronizedList(new ArrayList<String>());
+        final Connection connection = stub(Connection.class, this);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getName().equals("createSession")) {
+                if (broken)
+                    throw new JMSException("Broker unavailable");
+                return stub(Session.class, new StubSession());
+            }
+            if (method.getName().equals("getClientID"))
+                return "junit";
+            return null;
+        }
+
+        /**
+         * Session recording the topics its consumers subscribe to
+         */
+        class StubSession implements InvocationHandler
+        {
+            @Override
+            public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+            {
+                if (method.getName().equals("createTopic"))
+                    return new ActiveMQTopic((String) args[0]);
+                if (method.getName().equals("createConsumer")) {
+                    consumers.add(((ActiveMQTopic) args[0]).getPhysicalName());
+                    return stub(MessageConsumer.class, new StubConsumer());
+                }
+                return null;
+            }
+        }
+    }
+
+    /**
+     * Consumer waiting for a message that never comes
+     */
+    static class StubConsumer implements InvocationHandler
+    {
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getName().equals("receive")) {
+                try {
+                    Thread.sleep(args == null ? 10 : Math.min(10, (Long) args[0]));
+                }
+                catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            return null;
+        }
+    }
+
+    /**
+     * NATS connector collecting the published messages
+     */
+    static class StubConnector implements InvocationHandler
+    {
+        final List<Message> published = Collections.synchronizedList(new ArrayList<Message>());
+        final NATSConnector connector = stub(NATSConnector.class, this);
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable
+        {
+            if (method.getName().equals("publish"))
+                published.add((Message) args[0]);
+            return null;
+        }
+    }
+
+    /**
+     * Wait for a condition to become true
+     *
+     * @return true if the condition became true before the timeout
+     */
+    static boolean await(long timeout, Condition condition) throws InterruptedException
+    {
+        long end = System.currentTimeMillis() + timeout;
+        while (!condition.check()) {
+            if (System.currentTimeMillis() > end)
+                return false;
+            Thread.sleep(10);
+        }
+        return true;
+    }
+
+    interface Condition
+    {
+        boolean check();
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * @author Charles Blais <charles.blais@canada.ca>
+ */
+
+package io.nats.connector.plugins.activemq;
+
+import java.io.File;
+import java.io.FileWriter;
+import java.util.Arrays;
+import java.util.Properties;
+
+import org.junit.*;
+import org.slf4j.LoggerFactory;
+
+
+/**
+ * Unit test for the subscription during startup and the warm-up of the
+ * conversion path.
+ */
+public class StartupTest
+{
+    ActiveMQPlugin plugin;
+
+    @Before
+    public void initialize()
+    {
+        System.clearProperty(ActiveMQPlugin.PROPERTY_FILE);
+        plugin = new ActiveMQPlugin();
+    }
+
+    @Test
+    public void testSubscribedBeforeNatsInitialized() throws Exception
+    {
+        File file = File.createTempFile("activemq", ".properties");
+        final PluginStubs.StubConnection broker = new PluginStubs.StubConnection();
+        try {
+            FileWriter writer = new FileWriter(file);
+            try {
+                writer.write(ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC + "=a,b\n");
+            }
+            finally {
+                writer.close();
+            }
+            System.setProperty(ActiveMQPlugin.PROPERTY_FILE, file.getPath());
+
+            plugin.connection = broker.connection;
+            Assert.assertTrue(plugin.onStartup(LoggerFactory.getLogger(StartupTest.class), null));
+            Assert.assertTrue("Topics not subscribed during startup",
+                PluginStubs.await(5000, new PluginStubs.Condition() {
+                    public boolean check() { return broker.consumers.size() == 2; }
+                }));
+            Assert.assertNull(plugin.connector);
+
+            // The listeners reuse the consumers created during startup
+            Assert.assertTrue(plugin.onNatsInitialized(new PluginStubs.StubConnector().connector));
+            Thread.sleep(200);
+            Assert.assertEquals(Arrays.asList("a", "b"), broker.consumers);
+        }
+        finally {
+            plugin.onShutdown();
+            System.clearProperty(ActiveMQPlugin.PROPERTY_FILE);
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testWarmUpLeavesConnectorUntouched()
+    {
+        Properties p = new Properties();
+        p.setProperty(ActiveMQPlugin.PROPERTY_ACTIVEMQ_TOPIC, "a,b.>");
+        plugin.logger = LoggerFactory.getLogger(StartupTest.class);
+        plugin.reloadable = new ActiveMQPlugin.ReloadableProperties(p);
+        plugin.envelope = true;
+        plugin.chunkSize = 1024;
+        plugin.warmupMessages = 100;
+        plugin.chunker = new MessageChunker(plugin.chunkSize);
+        plugin.envelopeEncoder = new EnvelopeEncoder();
+
+        ActiveMQPlugin.WarmUpTask warmUp = plugin.new WarmUpTask();
+        warmUp.run();
+
+        Assert.assertEquals(2, warmUp.encoder.destinations());
+        Assert.assertEquals(0, plugin.envelopeEncoder.destinations());
+        Assert.assertEquals(0, plugin.envelopeEncoder.names());
+        Assert.assertEquals(0, plugin.statistics.getForwarded());
+        Assert.assertEquals(-1, plugin.statistics.getTimeToFirstForward());
+        Assert.assertTrue(plugin.statistics.getLastForwardTimes().isEmpty());
+    }
+}